@@ -0,0 +1,184 @@
+package auxiliary;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A monotone bucket queue (Dial's algorithm) of the integers
+ * {@code 0, ..., capacity-1} with non-negative {@code double} keys. An
+ * item with key {@code k} is kept in bucket {@code floor(k/width)}, and
+ * items are taken out bucket by bucket in increasing order; items within
+ * one bucket come out in no particular order. Insertion, moving an item
+ * to another bucket and polling all run in constant time, apart from
+ * skipping empty buckets.
+ * <p>
+ * The queue is monotone: no item may be inserted into a bucket before the
+ * current one. If no key exceeds the key of the current bucket by more
+ * than the {@code maxStep} given to {@link BucketQueue#reset(double, double)},
+ * which holds in a shortest path search when {@code maxStep} is the
+ * largest edge cost, the buckets in use span a bounded range and are
+ * kept in a circular array.
+ * <p>
+ * The buckets are intrusive doubly linked lists on primitive arrays, so
+ * no operation allocates once the queue has been sized.
+ */
+public final class BucketQueue {
+	private static final int NONE = -1;
+
+	/**
+	 * Largest number of buckets that {@code reset} accepts.
+	 */
+	private static final int MAX_BUCKETS = 1 << 26;
+
+	private final int[] next;
+	private final int[] prev;
+
+	/**
+	 * Slot in {@code heads} of the bucket of each item, or {@code NONE}.
+	 */
+	private final int[] slotOf;
+
+	/**
+	 * First item of each bucket, indexed by bucket number modulo the
+	 * number of buckets.
+	 */
+	private int[] heads = new int[0];
+	private int numBuckets = 0;
+
+	private double width = 1;
+
+	/**
+	 * Number of the current bucket, which no item precedes.
+	 */
+	private long current = 0;
+
+	private int size = 0;
+
+	/**
+	 * @param capacity the number of distinct items, so that items are
+	 * the integers from 0 to {@code capacity-1}
+	 */
+	public BucketQueue(int capacity) {
+		next = new int[capacity];
+		prev = new int[capacity];
+		slotOf = new int[capacity];
+		Arrays.fill(slotOf, NONE);
+	}
+
+	/**
+	 * Empties the queue and prepares it for keys starting at 0 that never
+	 * exceed the key of the current bucket by more than {@code maxStep}.
+	 *
+	 * @param width the range of keys of each bucket
+	 * @param maxStep the largest difference between the key of an inserted
+	 * item and the least key in the queue
+	 * @throws IllegalArgumentException if {@code width} is not positive, or
+	 * so small compared to {@code maxStep} that too many buckets are needed
+	 */
+	public void reset(double width, double maxStep) {
+		if (!(width > 0)) {
+			throw new IllegalArgumentException("The bucket width must be positive, but was " + width + ".");
+		}
+		double buckets = Math.ceil(maxStep / width) + 2;
+		if (!(buckets <= MAX_BUCKETS)) {
+			throw new IllegalArgumentException("A bucket width of " + width + " is too small for keys that differ by up to "
+					+ maxStep + ".");
+		}
+		clear();
+		this.width = width;
+		numBuckets = (int) buckets;
+		if (heads.length < numBuckets) {
+			heads = new int[Math.max(numBuckets, 2 * heads.length)];
+			Arrays.fill(heads, NONE);
+		}
+		current = 0;
+	}
+
+	/**
+	 * Removes all items. Runs in time proportional to the number of items
+	 * and buckets.
+	 */
+	public void clear() {
+		for (int slot = 0; slot < numBuckets && size > 0; slot++) {
+			for (int item = heads[slot]; item != NONE; item = next[item]) {
+				slotOf[item] = NONE;
+				size--;
+			}
+			heads[slot] = NONE;
+		}
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int item) {
+		return slotOf[item] != NONE;
+	}
+
+	/**
+	 * Inserts an item, or moves it to the bucket of its new key if it is
+	 * already in the queue.
+	 *
+	 * @param item the item
+	 * @param key the key, which must not belong to a bucket before the
+	 * current one
+	 */
+	public void insertOrMove(int item, double key) {
+		int slot = (int) ((long) (key / width) % numBuckets);
+		if (slotOf[item] != NONE) {
+			if (slotOf[item] == slot) return;
+			unlink(item);
+		}
+		int head = heads[slot];
+		next[item] = head;
+		prev[item] = NONE;
+		if (head != NONE) prev[head] = item;
+		heads[slot] = item;
+		slotOf[item] = slot;
+		size++;
+	}
+
+	/**
+	 * Advances to the first bucket that is not empty; the queue must not
+	 * be empty.
+	 *
+	 * @return the number of the current bucket, so that the keys of its
+	 * items are at least that number times the width
+	 */
+	public long nextBucket() {
+		if (size == 0) throw new NoSuchElementException();
+		while (heads[(int) (current % numBuckets)] == NONE) {
+			current++;
+		}
+		return current;
+	}
+
+	/**
+	 * Removes an item from the current bucket.
+	 *
+	 * @return the item, or -1 if the current bucket is empty
+	 */
+	public int pollCurrentBucket() {
+		int item = heads[(int) (current % numBuckets)];
+		if (item != NONE) {
+			unlink(item);
+		}
+		return item;
+	}
+
+	private void unlink(int item) {
+		int slot = slotOf[item];
+		int n = next[item];
+		int p = prev[item];
+		if (p != NONE) next[p] = n; else heads[slot] = n;
+		if (n != NONE) prev[n] = p;
+		slotOf[item] = NONE;
+		size--;
+	}
+}
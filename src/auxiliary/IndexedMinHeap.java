@@ -0,0 +1,240 @@
+package auxiliary;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A min-priority queue of the integers {@code 0, ..., capacity-1} with
+ * {@code double} keys, implemented as an indexed 4-ary heap on primitive
+ * arrays. The position of every item in the heap is kept in an array
+ * indexed by the item, so {@code decreaseKey} runs in O(log(n)) time
+ * without hashing, and no operation allocates. A heap is meant to be
+ * created once, sized to the number of nodes of a network, and reused for
+ * every shortest path search after a call to {@code clear}.
+ * <p>
+ * Compared to {@link MyMinPriorityQueue}, which maps elements to heap
+ * positions with a {@code HashMap}, this avoids boxing and hashing on every
+ * operation. A 4-ary heap is shallower than a binary heap and keeps the
+ * children of a slot next to each other in memory, which suits the many
+ * decrease-key operations of Dijkstra's algorithm.
+ * <p>
+ * Ties between equal keys are broken arbitrarily, but deterministically
+ * for a given sequence of operations.
+ */
+public final class IndexedMinHeap {
+	private static final int ARITY = 4;
+	private static final int NOT_IN_HEAP = -1;
+
+	/**
+	 * The items in heap order.
+	 */
+	private final int[] heap;
+
+	/**
+	 * Position of each item in {@code heap}, or {@code NOT_IN_HEAP}.
+	 */
+	private final int[] position;
+
+	/**
+	 * Key of each item; only meaningful while the item is in the heap.
+	 */
+	private final double[] keys;
+
+	private int size = 0;
+
+	/**
+	 * @param capacity the number of distinct items, so that items are
+	 * the integers from 0 to {@code capacity-1}
+	 */
+	public IndexedMinHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		keys = new double[capacity];
+		Arrays.fill(position, NOT_IN_HEAP);
+	}
+
+	/**
+	 * @return the number of distinct items that the heap can hold
+	 */
+	public int capacity() {
+		return heap.length;
+	}
+
+	/**
+	 * Removes all items. Runs in time proportional to the number of
+	 * items currently in the heap.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			position[heap[i]] = NOT_IN_HEAP;
+		}
+		size = 0;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int item) {
+		return position[item] != NOT_IN_HEAP;
+	}
+
+	/**
+	 * @param item an item in the heap
+	 * @return the key of {@code item}
+	 */
+	public double getKey(int item) {
+		return keys[item];
+	}
+
+	/**
+	 * Inserts an item that is not in the heap.
+	 *
+	 * @param item the item to insert
+	 * @param key the key of the item
+	 */
+	public void insert(int item, double key) {
+		if (position[item] != NOT_IN_HEAP) {
+			throw new IllegalArgumentException("Item " + item + " is already in the heap.");
+		}
+		keys[item] = key;
+		heap[size] = item;
+		position[item] = size;
+		size++;
+		siftUp(size - 1);
+	}
+
+	/**
+	 * Lowers the key of an item in the heap.
+	 *
+	 * @param item an item in the heap
+	 * @param key the new key, which must not be greater than the current one
+	 */
+	public void decreaseKey(int item, double key) {
+		keys[item] = key;
+		siftUp(position[item]);
+	}
+
+	/**
+	 * Sets the key of an item in the heap, which may be lower or higher
+	 * than the current one.
+	 *
+	 * @param item an item in the heap
+	 * @param key the new key
+	 */
+	public void changeKey(int item, double key) {
+		double previous = keys[item];
+		keys[item] = key;
+		if (key < previous) {
+			siftUp(position[item]);
+		} else {
+			siftDown(position[item]);
+		}
+	}
+
+	/**
+	 * Inserts an item with the given key, or lowers its key if it is
+	 * already in the heap.
+	 *
+	 * @param item the item
+	 * @param key the key, which must not be greater than the current key
+	 * if the item is in the heap
+	 */
+	public void insertOrDecreaseKey(int item, double key) {
+		if (position[item] == NOT_IN_HEAP) {
+			insert(item, key);
+		} else {
+			decreaseKey(item, key);
+		}
+	}
+
+	/**
+	 * Removes an item from anywhere in the heap.
+	 *
+	 * @param item an item in the heap
+	 */
+	public void remove(int item) {
+		int i = position[item];
+		position[item] = NOT_IN_HEAP;
+		size--;
+		if (i < size) {
+			int last = heap[size];
+			heap[i] = last;
+			position[last] = i;
+			siftUp(i);
+			siftDown(position[last]);
+		}
+	}
+
+	/**
+	 * @return the item with the least key, without removing it
+	 */
+	public int peek() {
+		if (size == 0) throw new NoSuchElementException();
+		return heap[0];
+	}
+
+	/**
+	 * Removes and returns the item with the least key.
+	 *
+	 * @return the item with the least key
+	 */
+	public int poll() {
+		if (size == 0) throw new NoSuchElementException();
+		int min = heap[0];
+		position[min] = NOT_IN_HEAP;
+		size--;
+		if (size > 0) {
+			int last = heap[size];
+			heap[0] = last;
+			position[last] = 0;
+			siftDown(0);
+		}
+		return min;
+	}
+
+	private void siftUp(int i) {
+		int item = heap[i];
+		double key = keys[item];
+		while (i > 0) {
+			int parent = (i - 1) / ARITY;
+			int parentItem = heap[parent];
+			if (keys[parentItem] <= key) break;
+			heap[i] = parentItem;
+			position[parentItem] = i;
+			i = parent;
+		}
+		heap[i] = item;
+		position[item] = i;
+	}
+
+	private void siftDown(int i) {
+		int item = heap[i];
+		double key = keys[item];
+		while (true) {
+			int firstChild = ARITY * i + 1;
+			if (firstChild >= size) break;
+			int lastChild = Math.min(firstChild + ARITY, size);
+			int minChild = firstChild;
+			double minKey = keys[heap[firstChild]];
+			for (int c = firstChild + 1; c < lastChild; c++) {
+				double childKey = keys[heap[c]];
+				if (childKey < minKey) {
+					minChild = c;
+					minKey = childKey;
+				}
+			}
+			if (minKey >= key) break;
+			int childItem = heap[minChild];
+			heap[i] = childItem;
+			position[childItem] = i;
+			i = minChild;
+		}
+		heap[i] = item;
+		position[item] = i;
+	}
+}
@@ -267,8 +267,9 @@ public class RSUET extends RouteChoiceModel {
 	 * An inefficient, proof-of-concept experimental implementation of the RSUET
 	 * when the reference cost Phi is not the  "min" function.
 	 * It is not advised to use this algorithm on larger networks, since it 
-	 * enumerates the universal choice set. Perhaps future implementations
-	 * should instead use a k-shortest path algorithm. 
+	 * enumerates the universal choice set, unless the network is given a
+	 * k-shortest path generator, see 
+	 * {@link network.Network#setChoiceSetGenerator(network.ChoiceSetGenerator)}. 
 	 * 
 	 * <p> To speed up computation times, this algorithm heuristically cuts
 	 * off more expensive routes that with a high degree of likelihood would
@@ -412,28 +413,26 @@ public class RSUET extends RouteChoiceModel {
 
 
 		if (n >= Kmin) {
-			for (HashMap<Integer, OD> m: network.ods.values()) {
-				for (OD od: m.values()) {
-					int numPaths = od.restrictedChoiceSet.size();
-					if (numPaths >= Nmin) {
-						double maxCost = -1; // Initialise MRUE (maximum ratio of
-						// cost/minimum cost)
-						double threshold = calculateThreshold(od);
-						Path flaggedPath = null;
-						for (Path path: od.restrictedChoiceSet) {// Find highest cost route
-							double cost = path.genCost;
-							if (cost > maxCost) { // Current greatest violation
-								maxCost = cost;
-								flaggedPath = path;
-							}
-						}
-						if (maxCost > threshold) {// If greatest violation is above
-							// threshold, flag this path for
-							// removal
-							flags.put(od,flaggedPath);
-							somethingWasFlagged = true;
+			for (OD od: network.ods) {
+				int numPaths = od.restrictedChoiceSet.size();
+				if (numPaths >= Nmin) {
+					double maxCost = -1; // Initialise MRUE (maximum ratio of
+					// cost/minimum cost)
+					double threshold = calculateThreshold(od);
+					Path flaggedPath = null;
+					for (Path path: od.restrictedChoiceSet) {// Find highest cost route
+						double cost = path.genCost;
+						if (cost > maxCost) { // Current greatest violation
+							maxCost = cost;
+							flaggedPath = path;
 						}
 					}
+					if (maxCost > threshold) {// If greatest violation is above
+						// threshold, flag this path for
+						// removal
+						flags.put(od,flaggedPath);
+						somethingWasFlagged = true;
+					}
 				}
 			}
 		}
@@ -445,7 +444,7 @@ public class RSUET extends RouteChoiceModel {
 			Path pathToRemove = flags.get(od);
 			extraFlow = pathToRemove.getFlow();
 			pathToRemove.setFlow(0);
-			od.restrictedChoiceSet.remove(pathToRemove); // Remove flagged path from
+			od.removePath(pathToRemove); // Remove flagged path from
 			// od
 			for (Path path : od.restrictedChoiceSet) {
 				// Redistribute flow
@@ -586,42 +585,40 @@ public class RSUET extends RouteChoiceModel {
 	 * @param network the network to perform redistribution on
 	 */
 	public void redistributeFlowOnMarkedRoutesAccordingToProbability(Network network,int maxNumberOfPathsToRemove) {
-		for (HashMap<Integer,OD> m: network.ods.values()) { //for each OD
-			for (OD od: m.values()) {
-				/*if( network.useLocalStorage ){
-					try {
-						network.loadUniversalChoiceSetFromStorage(od);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				}*/
-				if (od.pathWasRemovedDuringLastIteration) {
-					od.pathWasRemovedDuringLastIteration = false;
-					continue;
+		for (OD od: network.ods) {
+			/*if( network.useLocalStorage ){
+				try {
+					network.loadUniversalChoiceSetFromStorage(od);
+				} catch (IOException e) {
+					e.printStackTrace();
 				}
-				double usedPathProbabilityMass = 0;
-				double totalFlowToRedistribute = 0;
-				//				First run: Calculate totals
-				int numberOfRemovedPaths = 0;
-				for (int i = 0; i < od.restrictedChoiceSet.size(); i++) {
-					Path path = od.restrictedChoiceSet.get(i);
-					if (path.p == 0 && path.getFlow() > 0 && numberOfRemovedPaths < maxNumberOfPathsToRemove) {
-						path.markedForRemoval = true;
-						od.pathWasRemovedDuringLastIteration = true;
-						totalFlowToRedistribute += path.getFlow();
-						numberOfRemovedPaths ++;
-					} else {
-						usedPathProbabilityMass += path.p;
-						path.markedForRemoval = false;
-					}
+			}*/
+			if (od.pathWasRemovedDuringLastIteration) {
+				od.pathWasRemovedDuringLastIteration = false;
+				continue;
+			}
+			double usedPathProbabilityMass = 0;
+			double totalFlowToRedistribute = 0;
+			//				First run: Calculate totals
+			int numberOfRemovedPaths = 0;
+			for (int i = 0; i < od.restrictedChoiceSet.size(); i++) {
+				Path path = od.restrictedChoiceSet.get(i);
+				if (path.p == 0 && path.getFlow() > 0 && numberOfRemovedPaths < maxNumberOfPathsToRemove) {
+					path.markedForRemoval = true;
+					od.pathWasRemovedDuringLastIteration = true;
+					totalFlowToRedistribute += path.getFlow();
+					numberOfRemovedPaths ++;
+				} else {
+					usedPathProbabilityMass += path.p;
+					path.markedForRemoval = false;
 				}
-				//				second run: redistribute
-				for (Path path: od.restrictedChoiceSet) {
-					if (path.markedForRemoval) {
-						path.setFlow(0);
-					} else {
-						path.setFlow(path.getFlow()+path.p/usedPathProbabilityMass*totalFlowToRedistribute);
-					}
+			}
+			//				second run: redistribute
+			for (Path path: od.restrictedChoiceSet) {
+				if (path.markedForRemoval) {
+					path.setFlow(0);
+				} else {
+					path.setFlow(path.getFlow()+path.p/usedPathProbabilityMass*totalFlowToRedistribute);
 				}
 			}
 		}
@@ -639,37 +636,35 @@ public class RSUET extends RouteChoiceModel {
 	 */
 	private void redistributeFlowOnMarkedRoutesMaxRelativeFlow(Network network, double maxPercentFlowToRemove) {
 		if (!(maxPercentFlowToRemove >= 0 && maxPercentFlowToRemove <= 1)) throw new IllegalArgumentException("Argument must be between 0 and 1.");
-		for (HashMap<Integer,OD> m: network.ods.values()) { //for each OD
-			for (OD od: m.values()) {
-				double totalFlowThatShouldBeThere = 0;
-				double totalFlowThatShouldNotBeThere = 0;
-				//				First run: Calculate totals
-				HashSet<Integer> flaggedPaths = new HashSet<Integer>();
-				for (int i = 0; i < od.restrictedChoiceSet.size(); i++) {
-					Path path = od.restrictedChoiceSet.get(i);
-					if (path.getAuxFlow() == 0) {
-						totalFlowThatShouldNotBeThere += path.getFlow();
-						flaggedPaths.add(i);
-					} else {
-						totalFlowThatShouldBeThere += path.getFlow();
-					}
+		for (OD od: network.ods) {
+			double totalFlowThatShouldBeThere = 0;
+			double totalFlowThatShouldNotBeThere = 0;
+			//				First run: Calculate totals
+			HashSet<Integer> flaggedPaths = new HashSet<Integer>();
+			for (int i = 0; i < od.restrictedChoiceSet.size(); i++) {
+				Path path = od.restrictedChoiceSet.get(i);
+				if (path.getAuxFlow() == 0) {
+					totalFlowThatShouldNotBeThere += path.getFlow();
+					flaggedPaths.add(i);
+				} else {
+					totalFlowThatShouldBeThere += path.getFlow();
 				}
+			}
 
-				double totalFlowToRemove = Math.min(totalFlowThatShouldNotBeThere, maxPercentFlowToRemove*(totalFlowThatShouldBeThere+totalFlowThatShouldNotBeThere));
-
-				if (totalFlowThatShouldNotBeThere == 0) continue;
-				double percentToRemove = totalFlowToRemove / totalFlowThatShouldNotBeThere;
-				double percentToAdd = totalFlowToRemove / totalFlowThatShouldBeThere;
+			double totalFlowToRemove = Math.min(totalFlowThatShouldNotBeThere, maxPercentFlowToRemove*(totalFlowThatShouldBeThere+totalFlowThatShouldNotBeThere));
 
-				//				second run: redistribute
-				for (Path path: od.restrictedChoiceSet) {
-					if (path.getAuxFlow() == 0) {
-						path.setFlow(path.getFlow()*(1-percentToRemove));
-					} else {
-						path.setFlow(path.getFlow()*(1+percentToAdd));
-					}
+			if (totalFlowThatShouldNotBeThere == 0) continue;
+			double percentToRemove = totalFlowToRemove / totalFlowThatShouldNotBeThere;
+			double percentToAdd = totalFlowToRemove / totalFlowThatShouldBeThere;
 
+			//				second run: redistribute
+			for (Path path: od.restrictedChoiceSet) {
+				if (path.getAuxFlow() == 0) {
+					path.setFlow(path.getFlow()*(1-percentToRemove));
+				} else {
+					path.setFlow(path.getFlow()*(1+percentToAdd));
 				}
+
 			}
 		}
 	}
@@ -682,34 +677,32 @@ public class RSUET extends RouteChoiceModel {
 	 * @param network the network on which to perform the operation
 	 */
 	private void redistributeFlowOnMostViolatingRoute(Network network) {
-		for (HashMap<Integer,OD> m: network.ods.values()) { //for each OD
-			for (OD od: m.values()) {
-				if (od.pathWasRemovedDuringLastIteration) {
-					od.pathWasRemovedDuringLastIteration = false;
-					continue;
-				}
-				double usedPathProbabilityMass = 0;
-				double totalFlowToRedistribute = 0;
-				//				First run: Calculate totals
-				double costOfMostViolatingPath = 0;
-				Path mostViolatingPath = null;
-				for (int i = 0; i < od.restrictedChoiceSet.size(); i++) {
-					Path path = od.restrictedChoiceSet.get(i);
-					if (path.p == 0 && path.getFlow() > 0 && path.genCost > costOfMostViolatingPath) {
-						mostViolatingPath = path;
-					} else {
-						usedPathProbabilityMass += path.p;
-					}
-				}
-				if (mostViolatingPath == null) continue;
-				totalFlowToRedistribute = mostViolatingPath.getFlow();
-				//				second run: redistribute
-				for (Path path: od.restrictedChoiceSet) {
-					path.setFlow(path.getFlow()+path.p/usedPathProbabilityMass*totalFlowToRedistribute);
+		for (OD od: network.ods) {
+			if (od.pathWasRemovedDuringLastIteration) {
+				od.pathWasRemovedDuringLastIteration = false;
+				continue;
+			}
+			double usedPathProbabilityMass = 0;
+			double totalFlowToRedistribute = 0;
+			//				First run: Calculate totals
+			double costOfMostViolatingPath = 0;
+			Path mostViolatingPath = null;
+			for (int i = 0; i < od.restrictedChoiceSet.size(); i++) {
+				Path path = od.restrictedChoiceSet.get(i);
+				if (path.p == 0 && path.getFlow() > 0 && path.genCost > costOfMostViolatingPath) {
+					mostViolatingPath = path;
+				} else {
+					usedPathProbabilityMass += path.p;
 				}
-
-				mostViolatingPath.setFlow(0);
 			}
+			if (mostViolatingPath == null) continue;
+			totalFlowToRedistribute = mostViolatingPath.getFlow();
+			//				second run: redistribute
+			for (Path path: od.restrictedChoiceSet) {
+				path.setFlow(path.getFlow()+path.p/usedPathProbabilityMass*totalFlowToRedistribute);
+			}
+
+			mostViolatingPath.setFlow(0);
 		}
 	}
 
@@ -725,16 +718,14 @@ public class RSUET extends RouteChoiceModel {
 		double enumerator = 0;
 		double denominator = 0;
 
-		for (HashMap<Integer,OD> m: network.ods.values()) {
-			for (OD od: m.values()) {
-				double cmin = od.getMinimumCost();
-				double delta = omega.calculateRefCost(od) - cmin;
-				for (Path path: od.restrictedChoiceSet) {
-					double pseudoCost = Math.max(0, path.genCost - cmin - delta);
-					double flow = path.getFlow();
-					enumerator += flow * pseudoCost;
-					denominator += flow*path.genCost;
-				}
+		for (OD od: network.ods) {
+			double cmin = od.getMinimumCost();
+			double delta = omega.calculateRefCost(od) - cmin;
+			for (Path path: od.restrictedChoiceSet) {
+				double pseudoCost = Math.max(0, path.genCost - cmin - delta);
+				double flow = path.getFlow();
+				enumerator += flow * pseudoCost;
+				denominator += flow*path.genCost;
 			}
 		}
 		return enumerator/denominator;
@@ -751,23 +742,21 @@ public class RSUET extends RouteChoiceModel {
 		double enumerator = 0;
 		double denominator = 0;
 
-		for (HashMap<Integer,OD> m: network.ods.values()) {
-			for (OD od: m.values()) {
-				double cmin = od.getMinimumCost();
-				double threshold = omega.calculateRefCost(od);
-				double delta = threshold - cmin;
-				double maxPseudoCost = 0;
-				double demand = od.demand;
-				for (Path path: od.restrictedChoiceSet) {
-					double flow = path.getFlow();
-					if (flow == 0) {
-						double cost = path.genCost;
-						double pseudoCost = Math.max(0, threshold - cost);
-						if (pseudoCost > maxPseudoCost) maxPseudoCost = pseudoCost;
-					}
-					enumerator += demand * maxPseudoCost;
-					denominator += delta * demand;
+		for (OD od: network.ods) {
+			double cmin = od.getMinimumCost();
+			double threshold = omega.calculateRefCost(od);
+			double delta = threshold - cmin;
+			double maxPseudoCost = 0;
+			double demand = od.demand;
+			for (Path path: od.restrictedChoiceSet) {
+				double flow = path.getFlow();
+				if (flow == 0) {
+					double cost = path.genCost;
+					double pseudoCost = Math.max(0, threshold - cost);
+					if (pseudoCost > maxPseudoCost) maxPseudoCost = pseudoCost;
 				}
+				enumerator += demand * maxPseudoCost;
+				denominator += delta * demand;
 			}
 		}
 		return enumerator/denominator;
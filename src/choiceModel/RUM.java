@@ -40,6 +40,11 @@ public abstract class RUM {
 	 */
 	public static double betaLength = 0.0;
 
+	/**
+	 * Cached result of {@link RUM#hasStandardGenCost()}.
+	 */
+	private Boolean hasStandardGenCost;
+
 	/**
 	 * maybe somewhat of a misnomer, "generalized cost" in this context means the linear
 	 * and additive deterministic part of route cost, using generalized cost parameters, but not 
@@ -59,6 +64,27 @@ public abstract class RUM {
 		return calculateStandardGenCost(edge);
 	}
 
+	/**
+	 * Tells whether this RUM uses the standard generalized cost
+	 * {@code betaTime * time + betaLength * length}, that is, whether
+	 * {@link RUM#genCost(Edge)} is not overridden. In that case, the
+	 * network may compute the generalized cost of all edges in bulk
+	 * rather than by calling {@code genCost} for each edge.
+	 * 
+	 * @return true if the generalized cost is the standard one
+	 * @see network.Network#updateEdgeCosts(RUM)
+	 */
+	public boolean hasStandardGenCost() {
+		if (hasStandardGenCost == null) {
+			try {
+				hasStandardGenCost = getClass().getMethod("genCost", Edge.class).getDeclaringClass() == RUM.class;
+			} catch (NoSuchMethodException e) {
+				hasStandardGenCost = false;
+			}
+		}
+		return hasStandardGenCost;
+	}
+
 	/**
 	 * Standard linear route choice specification. At the time of writing, the network
 	 * package does not easily allow more dimensions of link properties to be taken into
@@ -0,0 +1,159 @@
+package network;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The binary encoding of the paths of a choice set in the local storage.
+ * Each path is a fixed header of {@value #PATH_HEADER_BYTES} bytes,
+ * <pre>
+ * int number of edges, int number of bytes of the edges,
+ * double flow, double auxiliary flow, double length, double generalized cost,
+ * double enumerator, double probability, double transformed cost,
+ * double path size, byte marked for removal,
+ * </pre>
+ * followed by its edges. The edges are stored by id, as the difference 
+ * from the id of the previous edge of the path, zigzag-encoded so that 
+ * small negative differences are small numbers, in a variable-length 
+ * encoding of 7 bits per byte. Consecutive edges of a path mostly have 
+ * close ids, so an edge usually takes a byte or two rather than the 
+ * digits and delimiter of a text file, and the doubles are stored exactly
+ * rather than printed and parsed. All numbers are little-endian.
+ *
+ * @see ChoiceSetStore
+ */
+final class ChoiceSetEncoding {
+	static final int PATH_HEADER_BYTES = 4 + 4 + 8 * 8 + 1;
+
+	/**
+	 * The default size of buffers, in bytes.
+	 */
+	static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * The most bytes that the variable-length encoding of an int takes.
+	 */
+	static final int MAX_VARINT_BYTES = 5;
+
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private ChoiceSetEncoding() {
+	}
+
+	static ByteBuffer allocate(int capacity) {
+		return ByteBuffer.allocateDirect(capacity).order(ORDER);
+	}
+
+	/**
+	 * @return the most bytes that a path of {@code numEdges} edges takes
+	 */
+	static int maxBytes(int numEdges) {
+		return PATH_HEADER_BYTES + MAX_VARINT_BYTES * numEdges;
+	}
+
+	/**
+	 * Encodes a path, which must fit in the remaining bytes of
+	 * {@code buffer}, see {@link ChoiceSetEncoding#maxBytes(int)}.
+	 *
+	 * @param buffer the buffer to write to
+	 * @param path the path
+	 * @param edges the dense indices of the edges of the path
+	 * @param numEdges the number of edges of the path
+	 * @param store the edge store, which maps the edges to their ids
+	 * @param withFlows false to write flows of zero in place of those of
+	 * the path
+	 */
+	static void putPath(ByteBuffer buffer, Path path, int[] edges, int numEdges, EdgeStore store, boolean withFlows) {
+		int start = buffer.position();
+		buffer.putInt(numEdges);
+		buffer.putInt(0); // The number of bytes of the edges, filled in below
+		buffer.putDouble(withFlows ? path.getFlow() : 0);
+		buffer.putDouble(withFlows ? path.getAuxFlow() : 0);
+		buffer.putDouble(path.length);
+		buffer.putDouble(path.genCost);
+		buffer.putDouble(path.enumeratorInProbabilityExpression);
+		buffer.putDouble(path.p);
+		buffer.putDouble(path.transformedCost);
+		buffer.putDouble(path.PS);
+		buffer.put((byte) (path.markedForRemoval ? 1 : 0));
+		int previous = 0;
+		for (int j = 0; j < numEdges; j++) {
+			int id = store.id[edges[j]];
+			putVarint(buffer, zigzag(id - previous));
+			previous = id;
+		}
+		buffer.putInt(start + 4, buffer.position() - start - PATH_HEADER_BYTES);
+	}
+
+	/**
+	 * Decodes the path at the position of {@code buffer}, which must hold
+	 * all of it.
+	 *
+	 * @param buffer the buffer to read from
+	 * @param network the network of the path, which maps the edge ids
+	 * @param od the OD of the path
+	 * @return the path
+	 */
+	static Path getPath(ByteBuffer buffer, Network network, OD od) {
+		int numEdges = buffer.getInt();
+		buffer.getInt(); // The number of bytes of the edges
+		double flow = buffer.getDouble();
+		double auxFlow = buffer.getDouble();
+		double length = buffer.getDouble();
+		double genCost = buffer.getDouble();
+		double enumerator = buffer.getDouble();
+		double p = buffer.getDouble();
+		double transformedCost = buffer.getDouble();
+		double PS = buffer.getDouble();
+		boolean markedForRemoval = buffer.get() != 0;
+		int[] edges = new int[numEdges];
+		int id = 0;
+		for (int j = 0; j < numEdges; j++) {
+			id += unzigzag(getVarint(buffer));
+			edges[j] = network.getEdge(id).getIndex();
+		}
+		Path path = new Path(edges, network.getEdgeStore(), od);
+		path.setFlow(flow);
+		path.setAuxFlow(auxFlow);
+		path.length = length;
+		path.genCost = genCost;
+		path.enumeratorInProbabilityExpression = enumerator;
+		path.p = p;
+		path.transformedCost = transformedCost;
+		path.PS = PS;
+		path.markedForRemoval = markedForRemoval;
+		path.updateCost();
+		return path;
+	}
+
+	/**
+	 * Writes {@code value} in 7 bits per byte, low bits first, with the
+	 * high bit of each byte set if more bytes follow.
+	 */
+	static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	static int getVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+	static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
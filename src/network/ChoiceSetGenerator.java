@@ -0,0 +1,33 @@
+package network;
+
+/**
+ * An algorithm that generates the universal choice set of an OD, the
+ * paths that {@link Network#generateUniversalChoiceSets()} stores in
+ * {@link OD#R}. A generator hands each path it finds to the
+ * {@link PathSink} it is given, and must respect the global cost bound it
+ * is given as well as the local bound
+ * {@link Network#getLocalMaximumCostRatio()} on the cost of every subpath
+ * relative to the shortest path between its end nodes, unless
+ * {@link Network#isLocalConstraintEnabled()} is false.
+ * <p>
+ * Generators outside this package traverse the network through
+ * {@link Network#getTopology()} and {@link Network#getEdgeStore()}, and
+ * bound their searches with {@link Network#distanceToDestination(int, int)}
+ * and {@link Network#getAllPairsDistances()}.
+ *
+ * @see Network#setChoiceSetGenerator(ChoiceSetGenerator)
+ */
+public interface ChoiceSetGenerator {
+	/**
+	 * Generates the universal choice set of an OD.
+	 *
+	 * @param network the network, whose shortest path distances to the
+	 * destinations, and between all pairs of nodes if the local constraint
+	 * is enabled, have been computed
+	 * @param od the OD
+	 * @param maximumCost the largest cost of a path in the choice set
+	 * @param sink the sink of the paths, which the network closes
+	 * afterwards
+	 */
+	void generate(Network network, OD od, double maximumCost, PathSink sink);
+}
@@ -0,0 +1,419 @@
+package network;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import auxiliary.IndexedMinHeap;
+
+/**
+ * Decides which universal choice sets {@code od.R} are held in memory when
+ * the local storage is used, and loads and stores the others as they are
+ * needed. The network reaches the universal choice set of an OD through
+ * {@link ChoiceSetManager#acquire(OD)} and
+ * {@link ChoiceSetManager#release(OD, boolean)}, or through a sweep over
+ * all ODs with {@link ChoiceSetManager#forEach(ChoiceSetPipeline.Stage)}.
+ * <p>
+ * The choice sets in memory are kept within a budget of bytes, estimated
+ * from their numbers of paths and edges. When the budget is exceeded, they
+ * are evicted by the GreedyDual-Size policy: a choice set gets the
+ * priority {@code L + w/s} when it is used, where {@code s} is its size,
+ * {@code w} grows with the demand of the OD, and {@code L} is the priority
+ * of the last choice set evicted. The choice set of least priority goes
+ * first, so large choice sets of ODs with little demand are evicted before
+ * small ones of ODs with much demand, and since {@code L} only grows,
+ * choice sets that have not been used for long go before those used
+ * recently, as under LRU. A choice set that has changed since it was
+ * loaded is stored on eviction, or by {@link ChoiceSetManager#flush()}.
+ * <p>
+ * With a budget of zero, the default, every choice set is stored and
+ * cleared as soon as it has been used. Without the local storage, every
+ * choice set stays in memory and every access is a hit.
+ *
+ * @see Network#getChoiceSetManager()
+ * @see Network#setChoiceSetMemoryBudget(long)
+ */
+public final class ChoiceSetManager {
+	/**
+	 * Estimated bytes of a list, of a path without its edges, and of an
+	 * edge of a path.
+	 */
+	private static final int LIST_BYTES = 16;
+	private static final int PATH_BYTES = 144;
+	private static final int EDGE_BYTES = 4;
+
+	private final Network network;
+	private final ODTable ods;
+
+	/**
+	 * Whether the choice set of each OD, by position in the OD table, is
+	 * in memory, whether it has changed since it was stored, and its
+	 * estimated size.
+	 */
+	private final boolean[] resident;
+	private final boolean[] dirty;
+	private final long[] size;
+
+	/**
+	 * The choice sets in memory that may be evicted, by priority. A choice
+	 * set that has been acquired and not released is in memory, but not in
+	 * the queue.
+	 */
+	private final IndexedMinHeap evictionQueue;
+
+	/**
+	 * The weight of an OD per unit of demand, so that an OD of average
+	 * demand weighs 2 and one without demand weighs 1.
+	 */
+	private final double weightPerDemand;
+
+	private long budget = 0;
+	private long residentBytes = 0;
+
+	/**
+	 * The priority of the last choice set evicted.
+	 */
+	private double inflation = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	ChoiceSetManager(Network network) {
+		this.network = network;
+		this.ods = network.ods;
+		int numODs = ods.size();
+		resident = new boolean[numODs];
+		dirty = new boolean[numODs];
+		size = new long[numODs];
+		evictionQueue = new IndexedMinHeap(numODs);
+		double totalDemand = 0;
+		for (OD od: ods) {
+			totalDemand += od.demand;
+		}
+		weightPerDemand = totalDemand > 0 ? numODs / totalDemand : 0;
+	}
+
+	/**
+	 * Sets the estimated number of bytes of universal choice sets to hold
+	 * in memory when the local storage is used, evicting choice sets if
+	 * the new budget is exceeded.
+	 *
+	 * @param bytes the budget, at least 0
+	 * @throws ChoiceSetStoreException if an evicted choice set cannot be
+	 * stored
+	 */
+	synchronized void setBudget(long bytes) {
+		budget = bytes;
+		evictToBudget();
+	}
+
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return the estimated number of bytes of the choice sets in memory
+	 */
+	public synchronized long getResidentBytes() {
+		return residentBytes;
+	}
+
+	/**
+	 * @return the number of accesses that found the choice set in memory
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of accesses that loaded the choice set from the
+	 * local storage
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+	}
+
+	private boolean isStorageUsed() {
+		return Boolean.TRUE.equals(network.useLocalStorage);
+	}
+
+	private int indexOf(OD od) {
+		int i = ods.indexOf(od.O, od.D);
+		if (i < 0 || ods.get(i) != od) {
+			throw new IllegalArgumentException("OD " + od.O + "-" + od.D + " is not an OD of the network.");
+		}
+		return i;
+	}
+
+	/**
+	 * Gives the universal choice set of an OD, loading it if it is not in
+	 * memory. It stays in memory until it is released, or until the next
+	 * sweep over all ODs.
+	 *
+	 * @param od an OD of the network
+	 * @return the choice set, {@code od.R}
+	 * @throws ChoiceSetStoreException if the choice set cannot be loaded,
+	 * in which case it stays out of memory, or if a choice set evicted to
+	 * make room cannot be stored
+	 */
+	public synchronized ArrayList<Path> acquire(OD od) {
+		if (!isStorageUsed()) {
+			hits++;
+			return od.R;
+		}
+		int i = indexOf(od);
+		if (resident[i]) {
+			hits++;
+			if (evictionQueue.contains(i)) {
+				evictionQueue.remove(i);
+			}
+		} else {
+			misses++;
+			load(od);
+			resident[i] = true;
+		}
+		return od.R;
+	}
+
+	/**
+	 * Ends an access to the universal choice set of an OD, which may then
+	 * be evicted.
+	 *
+	 * @param od an OD whose choice set has been acquired
+	 * @param modified true if the choice set, or any of its paths, has
+	 * changed
+	 * @throws ChoiceSetStoreException if a choice set evicted to keep the
+	 * budget cannot be stored
+	 */
+	public synchronized void release(OD od, boolean modified) {
+		if (!isStorageUsed()) {
+			return;
+		}
+		int i = indexOf(od);
+		if (resident[i]) {
+			dirty[i] |= modified;
+			admit(i);
+		}
+	}
+
+	/**
+	 * Runs a computation on the universal choice set of every OD. The
+	 * choice sets in memory are processed first; the others are then
+	 * loaded, processed and kept or stored again through a
+	 * {@link ChoiceSetPipeline}, which overlaps the reads and writes with
+	 * the computation. A sweep does not count as a use of the choice sets
+	 * already in memory, so that it does not change their priorities.
+	 *
+	 * @param stage the computation, which may change the choice sets
+	 * @throws ChoiceSetStoreException if a choice set cannot be loaded or
+	 * stored, which stops the sweep; the choice sets not yet processed are
+	 * left as they were
+	 */
+	void forEach(ChoiceSetPipeline.Stage stage) {
+		if (!isStorageUsed()) {
+			for (OD od: ods) {
+				stage.process(od);
+			}
+			synchronized (this) {
+				hits += ods.size();
+			}
+			return;
+		}
+		ArrayList<OD> stored = new ArrayList<OD>();
+		for (int i = 0; i < ods.size(); i++) {
+			OD od = ods.get(i);
+			boolean inMemory;
+			synchronized (this) {
+				inMemory = resident[i];
+			}
+			if (!inMemory) {
+				stored.add(od);
+				continue;
+			}
+			stage.process(od);
+			synchronized (this) {
+				hits++;
+				dirty[i] = true;
+				if (evictionQueue.contains(i)) {
+					resize(i);
+				} else {
+					admit(i);
+				}
+			}
+		}
+		synchronized (this) {
+			misses += stored.size();
+			evictToBudget();
+		}
+		new ChoiceSetPipeline(this, network.getLocalStoragePipelineDepth()).run(stored, stage);
+	}
+
+	/**
+	 * Stores every choice set in memory that has changed, keeping it in
+	 * memory, and writes the index of the local storage, so that a later
+	 * run can load all choice sets from it.
+	 *
+	 * @throws IOException if the choice sets cannot be stored
+	 */
+	public synchronized void flush() throws IOException {
+		if (!isStorageUsed()) {
+			return;
+		}
+		for (int i = 0; i < resident.length; i++) {
+			if (dirty[i]) {
+				network.transferUniversalChoiceSetToStorage(ods.get(i));
+				dirty[i] = false;
+			}
+		}
+		network.getUniversalStore().flush();
+	}
+
+	/**
+	 * Gives an OD a new, empty universal choice set, which is about to be
+	 * generated; any choice set of the OD in memory is discarded.
+	 *
+	 * @param od an OD of the network
+	 * @return the new choice set, {@code od.R}
+	 */
+	synchronized ArrayList<Path> reset(OD od) {
+		if (isStorageUsed()) {
+			discard(indexOf(od));
+		}
+		od.R = new ArrayList<Path>();
+		return od.R;
+	}
+
+	/**
+	 * Hands the universal choice set of an OD over to the caller; the OD
+	 * is left without one.
+	 *
+	 * @param od an OD of the network
+	 * @return the choice set
+	 */
+	synchronized ArrayList<Path> detach(OD od) {
+		ArrayList<Path> choiceSet = acquire(od);
+		if (isStorageUsed()) {
+			discard(indexOf(od));
+		}
+		od.R = null;
+		return choiceSet;
+	}
+
+	/**
+	 * Discards every choice set in memory without storing it, as when the
+	 * local storage is created anew.
+	 */
+	synchronized void clear() {
+		for (int i = 0; i < resident.length; i++) {
+			if (resident[i]) {
+				discard(i);
+				ods.get(i).R.clear();
+			}
+		}
+		inflation = 0;
+	}
+
+	/**
+	 * Adds the stored choice set of an OD, if any, to {@code od.R}.
+	 *
+	 * @throws ChoiceSetStoreException if the choice set cannot be read, in
+	 * which case {@code od.R} is left as it was
+	 */
+	void load(OD od) {
+		if (od.R == null) {
+			od.R = new ArrayList<Path>();
+		}
+		int numPaths = od.R.size();
+		try {
+			ChoiceSetStore store = network.getUniversalStore();
+			if (store.contains(od)) {
+				store.read(od, od.R);
+			}
+		} catch (IOException e) {
+			// Drop the paths of a partial read
+			od.R.subList(numPaths, od.R.size()).clear();
+			throw new ChoiceSetStoreException(e);
+		}
+	}
+
+	/**
+	 * Keeps the choice set of an OD that has been loaded and processed in
+	 * memory, unless the budget is exceeded and it has the least priority,
+	 * in which case it is stored and cleared.
+	 *
+	 * @throws ChoiceSetStoreException if a choice set cannot be stored
+	 */
+	synchronized void admitProcessed(OD od) {
+		int i = indexOf(od);
+		resident[i] = true;
+		dirty[i] = true;
+		admit(i);
+	}
+
+	/**
+	 * Gives a choice set in memory a new priority, and evicts choice sets
+	 * until the budget is kept.
+	 */
+	private void admit(int i) {
+		resize(i);
+		double weight = 1 + weightPerDemand * ods.get(i).demand;
+		double priority = inflation + weight / size[i];
+		if (evictionQueue.contains(i)) {
+			evictionQueue.changeKey(i, priority);
+		} else {
+			evictionQueue.insert(i, priority);
+		}
+		evictToBudget();
+	}
+
+	/**
+	 * Updates the estimated size of a choice set in memory.
+	 */
+	private void resize(int i) {
+		long bytes = LIST_BYTES;
+		for (Path path: ods.get(i).R) {
+			bytes += PATH_BYTES + EDGE_BYTES * path.getNumEdges();
+		}
+		residentBytes += bytes - size[i];
+		size[i] = bytes;
+	}
+
+	/**
+	 * Evicts choice sets, storing those that have changed, until the
+	 * budget is kept.
+	 *
+	 * @throws ChoiceSetStoreException if a choice set cannot be stored, in
+	 * which case it stays in memory, and in the queue, as it was
+	 */
+	private void evictToBudget() {
+		while (residentBytes > budget && !evictionQueue.isEmpty()) {
+			int i = evictionQueue.peek();
+			OD od = ods.get(i);
+			if (dirty[i]) {
+				try {
+					network.transferUniversalChoiceSetToStorage(od);
+				} catch (IOException e) {
+					throw new ChoiceSetStoreException(e);
+				}
+			}
+			inflation = evictionQueue.getKey(i);
+			evictionQueue.poll();
+			discard(i);
+			od.R.clear();
+		}
+	}
+
+	private void discard(int i) {
+		if (evictionQueue.contains(i)) {
+			evictionQueue.remove(i);
+		}
+		residentBytes -= size[i];
+		resident[i] = false;
+		dirty[i] = false;
+		size[i] = 0;
+	}
+}
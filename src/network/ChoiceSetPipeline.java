@@ -0,0 +1,204 @@
+package network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs a computation on the universal choice set of every OD while the
+ * choice sets are kept in the local storage, in three overlapping stages:
+ * a reader thread loads the choice sets of the next ODs ahead of time, the
+ * calling thread runs the computation, and a writer thread hands the
+ * results to the {@link ChoiceSetManager}, which keeps them in memory or
+ * stores and clears them. The CPU thereby computes while the reads and
+ * writes are under way, rather than waiting for each in turn.
+ * <p>
+ * The stages pass the ODs on through queues of {@code depth} ODs each, so
+ * at most about {@code 2*depth + 3} choice sets are in flight at once. The
+ * ODs are processed, and handed over, in order.
+ *
+ * @see Network#setLocalStoragePipelineDepth(int)
+ */
+final class ChoiceSetPipeline {
+	/**
+	 * The computation on the choice set {@code od.R} of an OD.
+	 */
+	interface Stage {
+		void process(OD od);
+	}
+
+	/**
+	 * Marks the end of the ODs in a queue.
+	 */
+	private static final OD END = new OD(-1, -1, 0);
+
+	private final ChoiceSetManager manager;
+	private final int depth;
+
+	/**
+	 * Set when any stage fails, to stop the reader.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * The first exception or error of the reader or the writer, rethrown
+	 * by {@link ChoiceSetPipeline#run(Iterable, Stage)}. The threads record
+	 * even errors such as an {@link OutOfMemoryError} rather than die, so
+	 * that the calling thread is never left waiting on them.
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * @param manager the manager of the choice sets in the local storage
+	 * @param depth the number of ODs that each queue holds
+	 */
+	ChoiceSetPipeline(ChoiceSetManager manager, int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("The depth must be at least 1, but was " + depth + ".");
+		}
+		this.manager = manager;
+		this.depth = depth;
+	}
+
+	/**
+	 * Loads, processes and hands over the choice set of every OD. A choice
+	 * set that cannot be loaded stops the reader, so that the ODs not yet
+	 * loaded are left as they were, and the failure is rethrown once the
+	 * ODs already loaded have been processed and handed over.
+	 *
+	 * @param ods the ODs, in the order to process them
+	 * @param stage the computation
+	 */
+	void run(final Iterable<OD> ods, Stage stage) {
+		final BlockingQueue<OD> loaded = new ArrayBlockingQueue<OD>(depth);
+		final BlockingQueue<OD> processed = new ArrayBlockingQueue<OD>(depth);
+
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (OD od: ods) {
+						if (stopped) break;
+						manager.load(od);
+						loaded.put(od);
+					}
+				} catch (InterruptedException e) {
+					// Only the pipeline itself interrupts its threads
+				} catch (Throwable e) {
+					fail(e);
+				} finally {
+					putUninterruptibly(loaded, END);
+				}
+			}
+		}, "choice set reader");
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					OD od = takeUninterruptibly(processed);
+					if (od == END) break;
+					try {
+						manager.admitProcessed(od);
+					} catch (Throwable e) {
+						// Keep taking the ODs, so that the calling thread is not blocked
+						fail(e);
+					}
+				}
+			}
+		}, "choice set writer");
+		reader.setDaemon(true);
+		writer.setDaemon(true);
+		reader.start();
+		writer.start();
+
+		boolean completed = false;
+		try {
+			while (true) {
+				OD od = takeUninterruptibly(loaded);
+				if (od == END) break;
+				stage.process(od);
+				putUninterruptibly(processed, od);
+			}
+			completed = true;
+		} finally {
+			if (!completed) {
+				// Let the reader run out, discarding what it loads
+				stopped = true;
+				while (reader.isAlive() || !loaded.isEmpty()) {
+					OD od;
+					while ((od = loaded.poll()) != null) {
+						od.R.clear();
+					}
+					joinUninterruptibly(reader, 10);
+				}
+			}
+			putUninterruptibly(processed, END);
+			joinUninterruptibly(writer, 0);
+			joinUninterruptibly(reader, 0);
+		}
+		Throwable e = failure;
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		} else if (e instanceof Error) {
+			throw (Error) e;
+		} else if (e != null) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Records the failure of the reader or the writer, and stops the
+	 * reader, so that the computation runs out.
+	 */
+	private synchronized void fail(Throwable e) {
+		if (failure == null) {
+			failure = e;
+		}
+		stopped = true;
+	}
+
+	/*
+	 * The stages must see every OD through, so they wait out interrupts
+	 * and restore the interrupt status afterwards.
+	 */
+
+	private static void putUninterruptibly(BlockingQueue<OD> queue, OD od) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(od);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	private static OD takeUninterruptibly(BlockingQueue<OD> queue) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return queue.take();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void joinUninterruptibly(Thread thread, long millis) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				thread.join(millis);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+}
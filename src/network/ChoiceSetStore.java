@@ -0,0 +1,444 @@
+package network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.List;
+
+/**
+ * The choice sets of all ODs in the local storage, kept in a few large
+ * segment files rather than a file per OD, which for large networks
+ * would be millions of files. The choice set of an OD is one contiguous
+ * record in a segment,
+ * <pre>
+ * int number of paths, followed by the paths in {@link ChoiceSetEncoding},
+ * </pre>
+ * and an index maps each OD to the segment, offset and length of its
+ * record. Records are appended to the last segment, and a new segment is
+ * started when it would exceed {@value #SEGMENT_SIZE} bytes. A record that
+ * is rewritten with the same length, as when only the costs and flows of
+ * the paths have changed, is written in place; otherwise it is appended,
+ * and the old record is left unused until the store is created anew.
+ * <p>
+ * Records are read through a {@link MappedByteBuffer} of their segment,
+ * so reading a choice set copies nothing but the decoded paths. The index
+ * is kept in memory and written to its own file by
+ * {@link ChoiceSetStore#flush()}, so that a store can be opened again by a
+ * later run.
+ * <p>
+ * A store is named, and its files in the directory are the index
+ * {@code <name>.idx} and the segments {@code <name>_0.seg},
+ * {@code <name>_1.seg}, and so on. Records may be written and read
+ * concurrently by different threads, but not for the same OD.
+ *
+ * @see StoragePathSink
+ */
+public final class ChoiceSetStore {
+	private static final int SEGMENT_MAGIC = 0x53524B54; // "TKRS" in little-endian order
+	private static final int INDEX_MAGIC = 0x49524B54; // "TKRI" in little-endian order
+	private static final int VERSION = 1;
+	private static final int SEGMENT_HEADER_BYTES = 8;
+	private static final int INDEX_HEADER_BYTES = 12;
+	private static final int INDEX_ENTRY_BYTES = 4 + 4 + 4 + 8 + 4;
+	private static final int NONE = -1;
+
+	/**
+	 * The size at which a segment is full, in bytes. A segment may only
+	 * exceed it by holding a single record that is larger still.
+	 */
+	public static final long SEGMENT_SIZE = 1L << 30;
+
+	private final File directory;
+	private final String name;
+	private final Network network;
+
+	private final ArrayList<FileChannel> segments = new ArrayList<FileChannel>();
+
+	/**
+	 * The size of each segment, and the mapping of each, which may cover
+	 * less than the segment if it has grown since it was mapped.
+	 */
+	private final ArrayList<Long> segmentSizes = new ArrayList<Long>();
+	private final ArrayList<MappedByteBuffer> mappings = new ArrayList<MappedByteBuffer>();
+
+	/**
+	 * The segment, offset and length of the record of each OD, by its
+	 * position in {@link Network#ods}; the segment is {@code NONE} for ODs
+	 * without a record.
+	 */
+	private final int[] recordSegment;
+	private final long[] recordOffset;
+	private final int[] recordLength;
+
+	/**
+	 * Buffers for the sinks, reused since direct buffers are costly to
+	 * allocate and only freed by the garbage collector.
+	 */
+	private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<ByteBuffer>();
+
+	private ChoiceSetStore(File directory, String name, Network network) {
+		this.directory = directory;
+		this.name = name;
+		this.network = network;
+		int numODs = network.ods.size();
+		recordSegment = new int[numODs];
+		recordOffset = new long[numODs];
+		recordLength = new int[numODs];
+		Arrays.fill(recordSegment, NONE);
+	}
+
+	/**
+	 * Creates an empty store, deleting the files of any store of the same
+	 * name in the directory.
+	 *
+	 * @param directory the directory of the files
+	 * @param name the name of the store
+	 * @param network the network of the choice sets
+	 * @return the store
+	 */
+	public static ChoiceSetStore create(String directory, String name, Network network) {
+		ChoiceSetStore store = new ChoiceSetStore(new File(directory), name, network);
+		// A file that is still mapped cannot be deleted on some systems; it is
+		// then truncated when its segment is created anew
+		store.indexFile().delete();
+		for (int s = 0; store.segmentFile(s).exists(); s++) {
+			store.segmentFile(s).delete();
+		}
+		return store;
+	}
+
+	/**
+	 * Opens the store of the given name in the directory, with the
+	 * records of its index file, or creates an empty store if there is
+	 * none. Records of ODs that are not in the network are ignored.
+	 *
+	 * @param directory the directory of the files
+	 * @param name the name of the store
+	 * @param network the network of the choice sets
+	 * @return the store
+	 * @throws IOException if the files cannot be read
+	 * @throws InputMismatchException if the files are not those of a store
+	 */
+	public static ChoiceSetStore open(String directory, String name, Network network) throws IOException {
+		ChoiceSetStore store = new ChoiceSetStore(new File(directory), name, network);
+		if (!store.indexFile().exists()) {
+			return create(directory, name, network);
+		}
+		for (int s = 0; store.segmentFile(s).exists(); s++) {
+			FileChannel channel = FileChannel.open(store.segmentFile(s).toPath(),
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			ByteBuffer header = ChoiceSetEncoding.allocate(SEGMENT_HEADER_BYTES);
+			readFully(channel, header, 0);
+			if (header.getInt() != SEGMENT_MAGIC || header.getInt() != VERSION) {
+				channel.close();
+				throw new InputMismatchException(store.segmentFile(s) + " is not a choice set segment of version " + VERSION + ".");
+			}
+			store.segments.add(channel);
+			store.segmentSizes.add(channel.size());
+			store.mappings.add(null);
+		}
+		store.readIndex();
+		return store;
+	}
+
+	private File indexFile() {
+		return new File(directory, name + ".idx");
+	}
+
+	private File segmentFile(int segment) {
+		return new File(directory, name + "_" + segment + ".seg");
+	}
+
+	/**
+	 * @return the position of {@code od} in {@link Network#ods}
+	 */
+	private int indexOf(OD od) {
+		int i = network.ods.indexOf(od.O, od.D);
+		if (i < 0) {
+			throw new IllegalArgumentException("OD " + od.O + "-" + od.D + " is not in the network.");
+		}
+		return i;
+	}
+
+	/**
+	 * @param od an OD of the network
+	 * @return true if the store holds a choice set of {@code od}
+	 */
+	public boolean contains(OD od) {
+		return recordSegment[indexOf(od)] != NONE;
+	}
+
+	/**
+	 * Reads the choice set of an OD.
+	 *
+	 * @param od an OD of the network
+	 * @param paths the list to which to add the paths, in the order in
+	 * which they were written
+	 * @throws IOException if the store holds no choice set of {@code od},
+	 * or it cannot be read
+	 */
+	public void read(OD od, List<Path> paths) throws IOException {
+		ByteBuffer record = mapRecord(indexOf(od));
+		if (record == null) {
+			throw new IOException("The store " + name + " holds no choice set of OD " + od.O + "-" + od.D + ".");
+		}
+		int numPaths = record.getInt();
+		for (int k = 0; k < numPaths; k++) {
+			paths.add(ChoiceSetEncoding.getPath(record, network, od));
+		}
+	}
+
+	/**
+	 * @return a view of the record of the OD at position {@code i}, or null
+	 * if it has none
+	 */
+	private synchronized ByteBuffer mapRecord(int i) throws IOException {
+		int segment = recordSegment[i];
+		if (segment == NONE) {
+			return null;
+		}
+		long end = recordOffset[i] + recordLength[i];
+		MappedByteBuffer mapping = mappings.get(segment);
+		if (mapping == null || mapping.capacity() < end) {
+			// Map the whole segment as it is now, which covers every record in it
+			mapping = segments.get(segment).map(FileChannel.MapMode.READ_ONLY, 0, segmentSizes.get(segment));
+			mappings.set(segment, mapping);
+		}
+		ByteBuffer record = mapping.duplicate().order(ChoiceSetEncoding.ORDER);
+		record.limit((int) end);
+		record.position((int) recordOffset[i]);
+		return record;
+	}
+
+	/**
+	 * Stores the choice set of an OD, replacing any it had.
+	 *
+	 * @param od an OD of the network
+	 * @param paths the paths
+	 * @param withFlows false to store flows of zero in place of those of
+	 * the paths
+	 * @throws IOException if the choice set cannot be written
+	 */
+	public void write(OD od, List<Path> paths, boolean withFlows) throws IOException {
+		StoragePathSink sink = new StoragePathSink(this, od);
+		try {
+			for (Path path: paths) {
+				sink.add(path, withFlows);
+			}
+		} finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * Stores a record, written by a {@link StoragePathSink} as
+	 * {@code spilled} bytes in {@code spill} followed by the bytes of
+	 * {@code tail} up to its position.
+	 *
+	 * @param od the OD of the record
+	 * @param numPaths the number of paths in the record
+	 * @param spill the bytes that did not fit in {@code tail}, or null
+	 * @param spilled the number of bytes in {@code spill}
+	 * @param tail the last bytes of the record
+	 * @throws IOException if the record cannot be written
+	 */
+	synchronized void commit(OD od, int numPaths, FileChannel spill, long spilled, ByteBuffer tail) throws IOException {
+		int i = indexOf(od);
+		long length = 4 + spilled + tail.position();
+		if (length > Integer.MAX_VALUE - SEGMENT_HEADER_BYTES) {
+			throw new IOException("The choice set of OD " + od.O + "-" + od.D + " is too large for a segment.");
+		}
+		int segment;
+		long offset;
+		if (recordSegment[i] != NONE && recordLength[i] == length) {
+			segment = recordSegment[i];
+			offset = recordOffset[i];
+		} else {
+			segment = segments.size() - 1;
+			if (segment < 0 || segmentSizes.get(segment) > SEGMENT_HEADER_BYTES && segmentSizes.get(segment) + length > SEGMENT_SIZE) {
+				segment = newSegment();
+			}
+			offset = segmentSizes.get(segment);
+			segmentSizes.set(segment, offset + length);
+		}
+		FileChannel channel = segments.get(segment);
+		ByteBuffer count = ChoiceSetEncoding.allocate(4);
+		count.putInt(numPaths);
+		count.flip();
+		long position = writeFully(channel, count, offset);
+		if (spill != null) {
+			long transferred = 0;
+			while (transferred < spilled) {
+				transferred += spill.transferTo(transferred, spilled - transferred, channel.position(position + transferred));
+			}
+			position += spilled;
+		}
+		tail.flip();
+		writeFully(channel, tail, position);
+		recordSegment[i] = segment;
+		recordOffset[i] = offset;
+		recordLength[i] = (int) length;
+	}
+
+	private int newSegment() throws IOException {
+		int segment = segments.size();
+		FileChannel channel = FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		ByteBuffer header = ChoiceSetEncoding.allocate(SEGMENT_HEADER_BYTES);
+		header.putInt(SEGMENT_MAGIC);
+		header.putInt(VERSION);
+		header.flip();
+		writeFully(channel, header, 0);
+		segments.add(channel);
+		segmentSizes.add((long) SEGMENT_HEADER_BYTES);
+		mappings.add(null);
+		return segment;
+	}
+
+	/**
+	 * Writes the index to its file, so that the store can be opened again.
+	 *
+	 * @throws IOException if the index cannot be written
+	 */
+	public synchronized void flush() throws IOException {
+		int numRecords = 0;
+		for (int i = 0; i < recordSegment.length; i++) {
+			if (recordSegment[i] != NONE) numRecords++;
+		}
+		FileChannel channel = FileChannel.open(indexFile().toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = acquireBuffer();
+			buffer.putInt(INDEX_MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(numRecords);
+			long position = 0;
+			for (int i = 0; i < recordSegment.length; i++) {
+				if (recordSegment[i] == NONE) continue;
+				if (buffer.remaining() < INDEX_ENTRY_BYTES) {
+					buffer.flip();
+					position = writeFully(channel, buffer, position);
+					buffer.clear();
+				}
+				OD od = network.ods.get(i);
+				buffer.putInt(od.O);
+				buffer.putInt(od.D);
+				buffer.putInt(recordSegment[i]);
+				buffer.putLong(recordOffset[i]);
+				buffer.putInt(recordLength[i]);
+			}
+			buffer.flip();
+			writeFully(channel, buffer, position);
+			releaseBuffer(buffer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void readIndex() throws IOException {
+		FileChannel channel = FileChannel.open(indexFile().toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size < INDEX_HEADER_BYTES) {
+				throw new InputMismatchException(indexFile() + " is not a choice set index of version " + VERSION + ".");
+			}
+			MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			index.order(ChoiceSetEncoding.ORDER);
+			if (index.getInt() != INDEX_MAGIC || index.getInt() != VERSION) {
+				throw new InputMismatchException(indexFile() + " is not a choice set index of version " + VERSION + ".");
+			}
+			int numRecords = index.getInt();
+			for (int k = 0; k < numRecords; k++) {
+				int O = index.getInt();
+				int D = index.getInt();
+				int segment = index.getInt();
+				long offset = index.getLong();
+				int length = index.getInt();
+				int i = network.ods.indexOf(O, D);
+				if (i < 0) continue;
+				if (segment >= segments.size() || offset + length > segmentSizes.get(segment)) {
+					throw new InputMismatchException("The record of OD " + O + "-" + D + " in " + indexFile() + " lies outside its segment.");
+				}
+				recordSegment[i] = segment;
+				recordOffset[i] = offset;
+				recordLength[i] = length;
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes the index and closes the files. The store cannot be used
+	 * afterwards.
+	 *
+	 * @throws IOException if the index cannot be written
+	 */
+	public synchronized void close() throws IOException {
+		flush();
+		for (FileChannel channel: segments) {
+			channel.close();
+		}
+		segments.clear();
+		mappings.clear();
+	}
+
+	/**
+	 * @return a buffer of {@link ChoiceSetEncoding#BUFFER_SIZE} bytes,
+	 * cleared
+	 */
+	synchronized ByteBuffer acquireBuffer() {
+		ByteBuffer buffer = buffers.poll();
+		return buffer != null ? buffer : ChoiceSetEncoding.allocate(ChoiceSetEncoding.BUFFER_SIZE);
+	}
+
+	/**
+	 * Returns a buffer from {@link ChoiceSetStore#acquireBuffer()} for
+	 * reuse.
+	 */
+	synchronized void releaseBuffer(ByteBuffer buffer) {
+		if (buffer.capacity() == ChoiceSetEncoding.BUFFER_SIZE) {
+			buffer.clear();
+			buffers.push(buffer);
+		}
+	}
+
+	/**
+	 * @return the directory of the files of the store
+	 */
+	File getDirectory() {
+		return directory;
+	}
+
+	Network getNetwork() {
+		return network;
+	}
+
+	/**
+	 * @return the position after the bytes written
+	 */
+	private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		return position;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new InputMismatchException("Unexpected end of a choice set file.");
+			}
+			position += read;
+		}
+		buffer.flip();
+	}
+}
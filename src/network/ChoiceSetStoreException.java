@@ -0,0 +1,30 @@
+package network;
+
+import java.io.IOException;
+
+/**
+ * An {@link IOException} of the local storage of the universal choice
+ * sets, thrown unchecked by the {@link ChoiceSetManager} when a choice set
+ * cannot be loaded or stored. The choice set is left as it was: one that
+ * could not be loaded stays out of memory and is read again on the next
+ * access, and one that could not be stored stays in memory and is stored
+ * again later, so that a failed read or write never replaces the stored
+ * choice set.
+ *
+ * @see ChoiceSetManager#acquire(OD)
+ */
+public class ChoiceSetStoreException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param cause the exception of the store
+	 */
+	public ChoiceSetStoreException(IOException cause) {
+		super(cause);
+	}
+
+	@Override
+	public IOException getCause() {
+		return (IOException) super.getCause();
+	}
+}
@@ -0,0 +1,651 @@
+package network;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import auxiliary.IndexedMinHeap;
+
+/**
+ * A customizable contraction hierarchy (CCH) of the topology of a
+ * {@link Network}, for repeated shortest path searches on the same
+ * network with changing edge costs. Work is split in three phases:
+ * <ol>
+ * <li>Preprocessing, once per network and independent of the costs: the
+ * nodes are ordered by the minimum degree heuristic and eliminated in
+ * that order, every eliminated node connecting its remaining neighbours.
+ * The result is an undirected chordal graph of the original edges and
+ * the added shortcuts, in which every edge points from a lower to a
+ * higher ranked node, and its elimination tree, in which the parent of a
+ * node is its lowest ranked upward neighbour.</li>
+ * <li>Customization, whenever the costs have changed: the weight of each
+ * edge, in both directions, is the least of the cost of the original edge
+ * and of the paths through the lower triangles of the edge. The upward
+ * edges of a node depend only on the edges of nodes below it in the
+ * elimination tree, so all nodes of one level of the tree are customized
+ * in parallel.</li>
+ * <li>Queries: a one-to-all search (PHAST) relaxes the upward edges of the
+ * ancestors of the source in the elimination tree, and then sweeps all
+ * nodes top-down, relaxing their downward edges; a point-to-point search
+ * only visits the ancestors of the source and of the target. Neither
+ * needs a priority queue.</li>
+ * </ol>
+ * The shortcuts that make up a path are unpacked into the original edges
+ * through the middle node of the triangle each shortcut was derived from.
+ * When shortest paths are unique, the edges are those that
+ * {@link Network#dijkstraMinPriorityQueue(Node)} would find; between
+ * equally short paths the choice may differ.
+ * <p>
+ * Internally, nodes are numbered by rank. The upward edges of each node
+ * are kept in compressed-sparse-row form sorted by the rank of their
+ * head, so that an edge is identified by its position in that array.
+ *
+ * @see ShortestPathEngine#CCH
+ */
+public final class ContractionHierarchy {
+	private static final int NONE = -1;
+
+	/**
+	 * Number of nodes of one level of the elimination tree above which
+	 * the level is customized in parallel.
+	 */
+	private static final int PARALLEL_LEVEL_SIZE = 256;
+
+	private final int numNodes;
+
+	/**
+	 * Rank of each node by dense index, and node of each rank.
+	 */
+	private final int[] rank;
+	private final int[] nodeOfRank;
+
+	/**
+	 * Upward edges: the edges of the node of rank {@code r} go to the
+	 * ranks {@code upHeads[upOffsets[r]], ..., upHeads[upOffsets[r+1]-1]},
+	 * in increasing order.
+	 */
+	private final int[] upOffsets;
+	private final int[] upHeads;
+
+	/**
+	 * Lower end of each upward edge.
+	 */
+	private final int[] upTails;
+
+	/**
+	 * Downward edges, the same edges seen from their upper end: the lower
+	 * ends of the edges of rank {@code r} are {@code downTails[i]} for
+	 * {@code downOffsets[r] <= i < downOffsets[r+1]}, and the position of
+	 * each edge among the upward edges is {@code downEdges[i]}.
+	 */
+	private final int[] downOffsets;
+	private final int[] downTails;
+	private final int[] downEdges;
+
+	/**
+	 * Parent of each rank in the elimination tree, or {@code NONE} for
+	 * a root.
+	 */
+	private final int[] parent;
+
+	/**
+	 * Ranks grouped by their height in the elimination tree, leaves first.
+	 */
+	private final int[] levelOffsets;
+	private final int[] levelRanks;
+
+	/**
+	 * For each arc of the topology, the edge that represents it and
+	 * whether the arc points upwards.
+	 */
+	private final int[] arcEdges;
+	private final boolean[] arcIsUp;
+
+	/**
+	 * Dense edge index of each arc of the topology, and tail node of each
+	 * edge.
+	 */
+	private final int[] topologyEdges;
+	private final int[] edgeTails;
+
+	/**
+	 * Customized weight of each edge from its lower to its upper end
+	 * ({@code up}) and from its upper to its lower end ({@code down}).
+	 * An arc that is an original edge has its dense edge index in
+	 * {@code upOriginal} or {@code downOriginal}; a shortcut through a
+	 * lower triangle consists of an edge traversed downwards
+	 * ({@code first}) and an edge traversed upwards ({@code second}).
+	 * {@code upLast} and {@code downLast} hold the last original edge of
+	 * each arc when unpacked.
+	 */
+	private final double[] upWeight;
+	private final double[] downWeight;
+	private final int[] upOriginal;
+	private final int[] downOriginal;
+	private final int[] upFirst;
+	private final int[] upSecond;
+	private final int[] downFirst;
+	private final int[] downSecond;
+	private final int[] upLast;
+	private final int[] downLast;
+
+	/**
+	 * Preprocesses the topology of a network.
+	 *
+	 * @param topology the topology
+	 */
+	ContractionHierarchy(Topology topology) {
+		numNodes = topology.numNodes;
+		topologyEdges = topology.edges;
+		edgeTails = topology.edgeTails;
+		rank = new int[numNodes];
+		nodeOfRank = new int[numNodes];
+
+		// Undirected neighbours of each node, without loops and duplicates
+		int[][] adjacency = new int[numNodes][];
+		int[] degree = new int[numNodes];
+		int[] marks = new int[numNodes];
+		Arrays.fill(marks, NONE);
+		for (int u = 0; u < numNodes; u++) {
+			adjacency[u] = new int[Math.max(4, topology.getOutDegree(u) + topology.getInDegree(u))];
+		}
+		for (int u = 0; u < numNodes; u++) {
+			for (int a = topology.offsets[u]; a < topology.offsets[u + 1]; a++) {
+				int w = topology.heads[a];
+				if (w == u) continue;
+				if (!contains(adjacency[u], degree[u], w)) {
+					adjacency[u] = append(adjacency[u], degree[u]++, w);
+					adjacency[w] = append(adjacency[w], degree[w]++, u);
+				}
+			}
+		}
+
+		// Eliminate the nodes in order of least current degree
+		int[][] upNeighbours = new int[numNodes][];
+		IndexedMinHeap Q = new IndexedMinHeap(numNodes);
+		for (int u = 0; u < numNodes; u++) {
+			Q.insert(u, degree[u]);
+		}
+		int mark = 0;
+		for (int r = 0; r < numNodes; r++) {
+			int v = Q.poll();
+			rank[v] = r;
+			nodeOfRank[r] = v;
+			int[] neighbours = Arrays.copyOf(adjacency[v], degree[v]);
+			upNeighbours[v] = neighbours;
+			adjacency[v] = null;
+			for (int x: neighbours) {
+				// Remove v from the neighbours of x
+				int[] adj = adjacency[x];
+				int n = degree[x];
+				for (int i = 0; i < n; i++) {
+					if (adj[i] == v) {
+						adj[i] = adj[--n];
+						break;
+					}
+				}
+				// Connect x to the other neighbours of v
+				mark++;
+				for (int i = 0; i < n; i++) {
+					marks[adj[i]] = mark;
+				}
+				for (int y: neighbours) {
+					if (y != x && marks[y] != mark) {
+						adj = append(adj, n++, y);
+					}
+				}
+				adjacency[x] = adj;
+				degree[x] = n;
+				Q.changeKey(x, n);
+			}
+		}
+
+		// Upward edges in rank space
+		upOffsets = new int[numNodes + 1];
+		for (int v = 0; v < numNodes; v++) {
+			upOffsets[rank[v] + 1] = upNeighbours[v].length;
+		}
+		for (int r = 0; r < numNodes; r++) {
+			upOffsets[r + 1] += upOffsets[r];
+		}
+		int numEdges = upOffsets[numNodes];
+		upHeads = new int[numEdges];
+		upTails = new int[numEdges];
+		parent = new int[numNodes];
+		for (int r = 0; r < numNodes; r++) {
+			int[] neighbours = upNeighbours[nodeOfRank[r]];
+			int start = upOffsets[r];
+			for (int i = 0; i < neighbours.length; i++) {
+				upHeads[start + i] = rank[neighbours[i]];
+				upTails[start + i] = r;
+			}
+			Arrays.sort(upHeads, start, upOffsets[r + 1]);
+			parent[r] = neighbours.length > 0 ? upHeads[start] : NONE;
+		}
+
+		// Downward edges
+		downOffsets = new int[numNodes + 1];
+		for (int i = 0; i < numEdges; i++) {
+			downOffsets[upHeads[i] + 1]++;
+		}
+		for (int r = 0; r < numNodes; r++) {
+			downOffsets[r + 1] += downOffsets[r];
+		}
+		downTails = new int[numEdges];
+		downEdges = new int[numEdges];
+		int[] next = Arrays.copyOf(downOffsets, numNodes);
+		for (int r = 0; r < numNodes; r++) {
+			for (int i = upOffsets[r]; i < upOffsets[r + 1]; i++) {
+				int position = next[upHeads[i]]++;
+				downTails[position] = r;
+				downEdges[position] = i;
+			}
+		}
+
+		// Levels of the elimination tree
+		int[] height = new int[numNodes];
+		int numLevels = numNodes > 0 ? 1 : 0;
+		for (int r = 0; r < numNodes; r++) {
+			if (parent[r] != NONE && height[parent[r]] < height[r] + 1) {
+				height[parent[r]] = height[r] + 1;
+				numLevels = Math.max(numLevels, height[r] + 2);
+			}
+		}
+		levelOffsets = new int[numLevels + 1];
+		for (int r = 0; r < numNodes; r++) {
+			levelOffsets[height[r] + 1]++;
+		}
+		for (int l = 0; l < numLevels; l++) {
+			levelOffsets[l + 1] += levelOffsets[l];
+		}
+		levelRanks = new int[numNodes];
+		next = Arrays.copyOf(levelOffsets, numLevels);
+		for (int r = 0; r < numNodes; r++) {
+			levelRanks[next[height[r]]++] = r;
+		}
+
+		// The edge of each arc
+		int numArcs = topology.getNumArcs();
+		arcEdges = new int[numArcs];
+		arcIsUp = new boolean[numArcs];
+		for (int u = 0; u < numNodes; u++) {
+			for (int a = topology.offsets[u]; a < topology.offsets[u + 1]; a++) {
+				int ru = rank[u];
+				int rw = rank[topology.heads[a]];
+				if (ru == rw) {
+					arcEdges[a] = NONE;
+				} else if (ru < rw) {
+					arcEdges[a] = findEdge(ru, rw);
+					arcIsUp[a] = true;
+				} else {
+					arcEdges[a] = findEdge(rw, ru);
+					arcIsUp[a] = false;
+				}
+			}
+		}
+
+		upWeight = new double[numEdges];
+		downWeight = new double[numEdges];
+		upOriginal = new int[numEdges];
+		downOriginal = new int[numEdges];
+		upFirst = new int[numEdges];
+		upSecond = new int[numEdges];
+		downFirst = new int[numEdges];
+		downSecond = new int[numEdges];
+		upLast = new int[numEdges];
+		downLast = new int[numEdges];
+	}
+
+	private static boolean contains(int[] array, int length, int value) {
+		for (int i = 0; i < length; i++) {
+			if (array[i] == value) return true;
+		}
+		return false;
+	}
+
+	private static int[] append(int[] array, int length, int value) {
+		if (length == array.length) {
+			array = Arrays.copyOf(array, 2 * length);
+		}
+		array[length] = value;
+		return array;
+	}
+
+	/**
+	 * @param lower a rank
+	 * @param upper a higher rank adjacent to {@code lower}
+	 * @return the position of the edge among the upward edges
+	 */
+	private int findEdge(int lower, int upper) {
+		return Arrays.binarySearch(upHeads, upOffsets[lower], upOffsets[lower + 1], upper);
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	/**
+	 * @return the number of edges of the hierarchy, original edges and
+	 * shortcuts, counting opposite directions once
+	 */
+	public int getNumEdges() {
+		return upHeads.length;
+	}
+
+	/**
+	 * @return the number of levels of the elimination tree
+	 */
+	public int getNumLevels() {
+		return levelOffsets.length - 1;
+	}
+
+	/**
+	 * Computes the weights of all edges for new edge costs.
+	 *
+	 * @param genCost the cost of each edge by dense edge index
+	 * @param pool the pool to customize large levels of the elimination
+	 * tree in parallel, or null to customize in the calling thread
+	 */
+	void customize(double[] genCost, ForkJoinPool pool) {
+		Arrays.fill(upWeight, Double.POSITIVE_INFINITY);
+		Arrays.fill(downWeight, Double.POSITIVE_INFINITY);
+		Arrays.fill(upOriginal, NONE);
+		Arrays.fill(downOriginal, NONE);
+		for (int a = 0; a < arcEdges.length; a++) {
+			int i = arcEdges[a];
+			if (i == NONE) continue;
+			int e = topologyEdges[a];
+			double cost = genCost[e];
+			if (arcIsUp[a]) {
+				if (cost < upWeight[i]) {
+					upWeight[i] = cost;
+					upOriginal[i] = e;
+				}
+			} else if (cost < downWeight[i]) {
+				downWeight[i] = cost;
+				downOriginal[i] = e;
+			}
+		}
+		for (int l = 0; l < getNumLevels(); l++) {
+			int from = levelOffsets[l];
+			int to = levelOffsets[l + 1];
+			if (pool != null && to - from > PARALLEL_LEVEL_SIZE) {
+				pool.invoke(new CustomizationTask(from, to));
+			} else {
+				for (int i = from; i < to; i++) {
+					customize(levelRanks[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Customizes the upward edges of one rank from the lower triangles of
+	 * those edges, once the edges of all lower ranks are customized.
+	 */
+	private void customize(int y) {
+		int yEnd = upOffsets[y + 1];
+		for (int q = upOffsets[y]; q < yEnd; q++) {
+			upFirst[q] = NONE;
+			upSecond[q] = NONE;
+			downFirst[q] = NONE;
+			downSecond[q] = NONE;
+		}
+		for (int k = downOffsets[y]; k < downOffsets[y + 1]; k++) {
+			int x = downTails[k];
+			int j = downEdges[k]; // the edge (x, y)
+			int q = upOffsets[y];
+			int xEnd = upOffsets[x + 1];
+			// The upward neighbours z of x above y are upward neighbours of y
+			for (int p = j + 1; p < xEnd; p++) { // the edge (x, z)
+				int z = upHeads[p];
+				while (upHeads[q] != z) q++; // the edge (y, z)
+				double up = downWeight[j] + upWeight[p];
+				if (up < upWeight[q]) {
+					upWeight[q] = up;
+					upFirst[q] = j;
+					upSecond[q] = p;
+				}
+				double down = downWeight[p] + upWeight[j];
+				if (down < downWeight[q]) {
+					downWeight[q] = down;
+					downFirst[q] = p;
+					downSecond[q] = j;
+				}
+			}
+		}
+		for (int q = upOffsets[y]; q < yEnd; q++) {
+			upLast[q] = upFirst[q] != NONE ? upLast[upSecond[q]] : upOriginal[q];
+			downLast[q] = downFirst[q] != NONE ? upLast[downSecond[q]] : downOriginal[q];
+			if (upFirst[q] != NONE) upOriginal[q] = NONE;
+			if (downFirst[q] != NONE) downOriginal[q] = NONE;
+		}
+	}
+
+	/**
+	 * Customizes a range of one level of the elimination tree, split in
+	 * halves down to {@code PARALLEL_LEVEL_SIZE} ranks.
+	 */
+	private class CustomizationTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		CustomizationTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PARALLEL_LEVEL_SIZE) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new CustomizationTask(from, mid), new CustomizationTask(mid, to));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				customize(levelRanks[i]);
+			}
+		}
+	}
+
+	/**
+	 * One-to-all search (PHAST) from {@code source}. Afterwards the
+	 * workspace holds the distance to every node, and the last edge and
+	 * predecessor on a shortest path to it, as after
+	 * {@link Network#dijkstraMinPriorityQueue(Node, ShortestPathWorkspace)}.
+	 *
+	 * @param source the dense index of the source node
+	 * @param workspace the workspace to hold the labels of the search
+	 */
+	void oneToAll(int source, ShortestPathWorkspace workspace) {
+		workspace.ensureHierarchyScratch();
+		final double[] d = workspace.forwardDist;
+		final int[] arc = workspace.forwardArc;
+
+		// Upward search along the ancestors of the source
+		int s = rank[source];
+		d[s] = 0;
+		for (int x = s; x != NONE; x = parent[x]) {
+			relaxUpward(x, d, arc);
+		}
+
+		// Downward sweep over all nodes, top-down
+		for (int v = numNodes - 1; v >= 0; v--) {
+			double dv = d[v];
+			int best = NONE;
+			for (int i = upOffsets[v]; i < upOffsets[v + 1]; i++) {
+				double alt = d[upHeads[i]] + downWeight[i];
+				if (alt < dv) {
+					dv = alt;
+					best = i;
+				}
+			}
+			if (best != NONE) {
+				d[v] = dv;
+				arc[v] = 2 * best + 1;
+			}
+		}
+
+		workspace.reset(source);
+		final double[] dist = workspace.dist;
+		final int[] pred = workspace.pred;
+		final int[] predEdge = workspace.predEdge;
+		final boolean[] visited = workspace.visited;
+		for (int r = 0; r < numNodes; r++) {
+			int v = nodeOfRank[r];
+			dist[v] = d[r];
+			visited[v] = d[r] < Double.POSITIVE_INFINITY;
+			if (arc[r] != NONE) {
+				int e = (arc[r] & 1) == 0 ? upLast[arc[r] >> 1] : downLast[arc[r] >> 1];
+				predEdge[v] = e;
+				pred[v] = edgeTails[e];
+			}
+		}
+		Arrays.fill(d, Double.POSITIVE_INFINITY);
+		Arrays.fill(arc, NONE);
+	}
+
+	/**
+	 * Relaxes the upward edges of rank {@code x}, recording in
+	 * {@code arc} the edge and direction ({@code 2*edge} for upwards) by
+	 * which each rank was last improved.
+	 */
+	private void relaxUpward(int x, double[] d, int[] arc) {
+		double dx = d[x];
+		if (dx == Double.POSITIVE_INFINITY) return;
+		for (int i = upOffsets[x]; i < upOffsets[x + 1]; i++) {
+			int z = upHeads[i];
+			double alt = dx + upWeight[i];
+			if (alt < d[z]) {
+				d[z] = alt;
+				arc[z] = 2 * i;
+			}
+		}
+	}
+
+	/**
+	 * Relaxes the upward edges of rank {@code x} in reverse, that is, the
+	 * downward arcs into {@code x}, for a search towards a target.
+	 */
+	private void relaxUpwardReverse(int x, double[] d, int[] arc) {
+		double dx = d[x];
+		if (dx == Double.POSITIVE_INFINITY) return;
+		for (int i = upOffsets[x]; i < upOffsets[x + 1]; i++) {
+			int z = upHeads[i];
+			double alt = dx + downWeight[i];
+			if (alt < d[z]) {
+				d[z] = alt;
+				arc[z] = 2 * i + 1;
+			}
+		}
+	}
+
+	/**
+	 * Point-to-point search along the ancestors of {@code source} and
+	 * {@code target} in the elimination tree. The edges of the path are
+	 * written to {@code workspace.pathEdges}.
+	 *
+	 * @param source the dense index of the source node
+	 * @param target the dense index of the target node
+	 * @param workspace the workspace of the search
+	 * @return the number of edges in the shortest path, or -1 if the
+	 * target cannot be reached
+	 */
+	int query(int source, int target, ShortestPathWorkspace workspace) {
+		workspace.ensureHierarchyScratch();
+		final double[] df = workspace.forwardDist;
+		final int[] af = workspace.forwardArc;
+		final double[] db = workspace.backwardDist;
+		final int[] ab = workspace.backwardArc;
+		int s = rank[source];
+		int t = rank[target];
+
+		// The labels are infinite between searches
+		df[s] = 0;
+		for (int x = s; x != NONE; x = parent[x]) {
+			relaxUpward(x, df, af);
+		}
+		db[t] = 0;
+		for (int x = t; x != NONE; x = parent[x]) {
+			relaxUpwardReverse(x, db, ab);
+		}
+		int meet = NONE;
+		double best = Double.POSITIVE_INFINITY;
+		for (int x = s; x != NONE; x = parent[x]) {
+			if (df[x] + db[x] < best) {
+				best = df[x] + db[x];
+				meet = x;
+			}
+		}
+
+		int numEdges = -1;
+		if (meet != NONE) {
+			numEdges = unpack(s, t, meet, af, ab, workspace);
+		}
+
+		for (int x = s; x != NONE; x = parent[x]) {
+			df[x] = Double.POSITIVE_INFINITY;
+			af[x] = NONE;
+		}
+		for (int x = t; x != NONE; x = parent[x]) {
+			db[x] = Double.POSITIVE_INFINITY;
+			ab[x] = NONE;
+		}
+		return numEdges;
+	}
+
+	/**
+	 * Unpacks the path of a point-to-point search into the original edges,
+	 * from the source to the meeting rank and from there to the target.
+	 */
+	private int unpack(int s, int t, int meet, int[] af, int[] ab, ShortestPathWorkspace workspace) {
+		int numEdges = 0;
+		// The upward arcs, collected from the meeting rank back to the source
+		int numArcs = 0;
+		for (int x = meet; x != s; x = upTails[af[x] >> 1]) {
+			workspace.pushHierarchyArc(numArcs++, af[x]);
+		}
+		for (int i = numArcs - 1; i >= 0; i--) {
+			numEdges = unpackArc(workspace.hierarchyArcs[i], workspace, numEdges);
+		}
+		// The downward arcs, from the meeting rank to the target
+		for (int x = meet; x != t; x = upTails[ab[x] >> 1]) {
+			numEdges = unpackArc(ab[x], workspace, numEdges);
+		}
+		return numEdges;
+	}
+
+	/**
+	 * Appends the original edges of one arc to {@code workspace.pathEdges},
+	 * expanding shortcuts with an explicit stack.
+	 *
+	 * @return the new number of edges in the path
+	 */
+	private int unpackArc(int arc, ShortestPathWorkspace workspace, int numEdges) {
+		int[] stack = workspace.hierarchyStack;
+		int top = 0;
+		stack[top++] = arc;
+		while (top > 0) {
+			int a = stack[--top];
+			int i = a >> 1;
+			boolean up = (a & 1) == 0;
+			int first = up ? upFirst[i] : downFirst[i];
+			if (first == NONE) {
+				workspace.ensurePathCapacity(numEdges + 1);
+				workspace.pathEdges[numEdges++] = up ? upOriginal[i] : downOriginal[i];
+			} else {
+				int second = up ? upSecond[i] : downSecond[i];
+				if (top + 2 > stack.length) {
+					stack = workspace.growHierarchyStack();
+				}
+				stack[top++] = 2 * second; // upwards, after
+				stack[top++] = 2 * first + 1; // downwards, first
+			}
+		}
+		return numEdges;
+	}
+}
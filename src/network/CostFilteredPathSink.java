@@ -0,0 +1,44 @@
+package network;
+
+import java.io.IOException;
+
+/**
+ * Passes on to another sink only the paths whose generalized cost, the
+ * sum of the current costs of their edges, is at most a given bound. This
+ * keeps a choice set to the paths within a tighter bound than the one
+ * they were generated under, without holding the rest in memory.
+ */
+public class CostFilteredPathSink implements PathSink {
+	private final PathSink sink;
+	private final EdgeStore store;
+	private final double maximumCost;
+
+	/**
+	 * @param sink the sink to pass the paths on to
+	 * @param network the network, whose current edge costs are used
+	 * @param maximumCost the largest cost of a path that is passed on
+	 */
+	public CostFilteredPathSink(PathSink sink, Network network, double maximumCost) {
+		this.sink = sink;
+		this.store = network.getEdgeStore();
+		this.maximumCost = maximumCost;
+	}
+
+	@Override
+	public void add(OD od, int[] pathEdges, int numEdges) {
+		// Summed from the origin, as Path#updateCost does
+		final double[] genCost = store.genCost;
+		double cost = 0;
+		for (int i = 0; i < numEdges; i++) {
+			cost += genCost[pathEdges[i]];
+		}
+		if (cost <= maximumCost) {
+			sink.add(od, pathEdges, numEdges);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		sink.close();
+	}
+}
@@ -0,0 +1,188 @@
+package network;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Dense matrix of shortest path distances, kept as primitive {@code double}
+ * rows, one row per shortest path tree, so a lookup neither hashes nor
+ * unboxes. For the distances between all pairs of nodes, the rows and
+ * columns are dense node indices and {@code get(u, v)} is the distance
+ * from node {@code u} to node {@code v}; for the distances to a set of
+ * destinations, each row is the tree of one destination.
+ * <p>
+ * A matrix takes {@code 8*rows*columns} bytes. If that exceeds the heap
+ * budget given to {@link DistanceMatrix#create(int, int, long, File)},
+ * the rows are instead written to a memory-mapped file, which the
+ * operating system pages in and out as needed.
+ *
+ * @see Network#generateAllShortestPathTrees()
+ * @see Network#generateDestinationTrees()
+ */
+public abstract class DistanceMatrix {
+	protected final int numRows;
+	protected final int numColumns;
+
+	DistanceMatrix(int numRows, int numColumns) {
+		this.numRows = numRows;
+		this.numColumns = numColumns;
+	}
+
+	/**
+	 * Creates a matrix on the heap if it fits within {@code heapBudget}
+	 * bytes, and in a memory-mapped file otherwise.
+	 *
+	 * @param numRows the number of rows
+	 * @param numColumns the number of columns, usually the number of nodes
+	 * @param heapBudget the largest number of bytes to keep on the heap
+	 * @param spillDirectory the directory of the file, or null for the
+	 * default temporary-file directory
+	 * @return an empty matrix, whose rows must be set before they are read
+	 * @throws IOException if the file cannot be created
+	 */
+	public static DistanceMatrix create(int numRows, int numColumns, long heapBudget, File spillDirectory) throws IOException {
+		if (8L * numRows * numColumns <= heapBudget) {
+			return new HeapDistanceMatrix(numRows, numColumns);
+		}
+		return new MappedDistanceMatrix(numRows, numColumns, spillDirectory);
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public int getNumColumns() {
+		return numColumns;
+	}
+
+	/**
+	 * @param row the row, such as the dense index of an origin node
+	 * @param column the column, such as the dense index of a destination node
+	 * @return the shortest path distance, or infinity if there is no path
+	 */
+	public abstract double get(int row, int column);
+
+	/**
+	 * Stores a row of distances. Rows may be set concurrently by 
+	 * different threads.
+	 *
+	 * @param row the row
+	 * @param distances the distances, of which the first 
+	 * {@code getNumColumns()} are stored
+	 */
+	abstract void setRow(int row, double[] distances);
+
+	/**
+	 * @return true if the matrix is kept in a memory-mapped file
+	 */
+	public abstract boolean isMapped();
+
+	/**
+	 * Deletes the file of a memory-mapped matrix that is being replaced,
+	 * unless it could be deleted as soon as it was mapped.
+	 */
+	abstract void dispose();
+
+	static final class HeapDistanceMatrix extends DistanceMatrix {
+		private final double[][] rows;
+
+		HeapDistanceMatrix(int numRows, int numColumns) {
+			super(numRows, numColumns);
+			rows = new double[numRows][];
+		}
+
+		@Override
+		public double get(int row, int column) {
+			return rows[row][column];
+		}
+
+		@Override
+		void setRow(int row, double[] distances) {
+			rows[row] = Arrays.copyOf(distances, numColumns);
+		}
+
+		@Override
+		public boolean isMapped() {
+			return false;
+		}
+
+		@Override
+		void dispose() {
+		}
+	}
+
+	static final class MappedDistanceMatrix extends DistanceMatrix {
+		/**
+		 * The rows are mapped in segments of {@code rowsPerSegment} rows,
+		 * since a single mapping cannot exceed 2 GB.
+		 */
+		private final DoubleBuffer[] segments;
+		private final int rowsPerSegment;
+
+		/**
+		 * The file of the mappings, or null once it has been deleted.
+		 */
+		private File file;
+
+		MappedDistanceMatrix(int numRows, int numColumns, File spillDirectory) throws IOException {
+			super(numRows, numColumns);
+			long rowBytes = 8L * Math.max(numColumns, 1);
+			rowsPerSegment = (int) Math.max(1, Math.min(numRows, Integer.MAX_VALUE / rowBytes));
+			int numSegments = (numRows + rowsPerSegment - 1) / rowsPerSegment;
+			segments = new DoubleBuffer[numSegments];
+
+			file = File.createTempFile("distances", ".bin", spillDirectory);
+			file.deleteOnExit();
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(rowBytes * numRows);
+				FileChannel channel = raf.getChannel();
+				for (int s = 0; s < numSegments; s++) {
+					int rows = Math.min(rowsPerSegment, numRows - s * rowsPerSegment);
+					MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+							s * rowsPerSegment * rowBytes, rows * rowBytes);
+					buffer.order(ByteOrder.nativeOrder());
+					segments[s] = buffer.asDoubleBuffer();
+				}
+			} finally {
+				// The mappings stay valid after the file is closed
+				raf.close();
+			}
+			// and, on POSIX systems, after it is deleted; elsewhere a mapped
+			// file cannot be deleted, so it is deleted when the matrix is disposed
+			if (file.delete()) {
+				file = null;
+			}
+		}
+
+		@Override
+		public double get(int row, int column) {
+			return segments[row / rowsPerSegment].get((row % rowsPerSegment) * numColumns + column);
+		}
+
+		@Override
+		void setRow(int row, double[] distances) {
+			DoubleBuffer segment = segments[row / rowsPerSegment].duplicate();
+			segment.position((row % rowsPerSegment) * numColumns);
+			segment.put(distances, 0, numColumns);
+		}
+
+		@Override
+		public boolean isMapped() {
+			return true;
+		}
+
+		@Override
+		void dispose() {
+			if (file != null && file.delete()) {
+				file = null;
+			}
+		}
+	}
+}
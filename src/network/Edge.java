@@ -4,171 +4,164 @@ import choiceModel.RUM;
 
 /**
  * Symbolizes a link in a {@link network.Network}. 
+ * The id, end nodes, capacity, length, BPR coefficients and the current 
+ * flow, time and generalized cost of the edge are kept in the 
+ * {@link EdgeStore} of the network, and the edge object is a handle to 
+ * its row there.
  * 
  * @author mesch
  * @see network.Network
  * @see network.Node
  */
 public class Edge {
-    	/**
-    	 * id of the edge, read from the node text file
-    	 * 
-    	 * @see Network#Network(String)
-    	 */
-	private int id;
-	
-	/**
-	 * tail id of node corresponding to terminal of this edge
-	 */
-	private int tail; // Node id of tail
-	
 	/**
-	 * head id of node corresponding to origin of this edge
-	 */
-	private int head; 
-	
-	/**
-	 * capacity practical capacity of link as used in BPR formula {@code time = freeFlowTime * (1 + b*(flow/capacity)^power}
-	 */
-	private double capacity;
-	
-	/**
-	 * length of this edge
-	 */
-	private double length; 
-	
-	/**
-	 * freeFlowTime of this edge
-	 */
-	private double freeFlowTime;
-	
-	/**
-	 * b coefficient as used in BPR formula {@code time = freeFlowTime * (1 + b*(flow/capacity)^power}
+	 * dense index of the edge, from 0 to the number of edges minus one,
+	 * as referenced from the {@link Topology} of the network. This is
+	 * also the row of the edge in {@code store}.
 	 */
-	private double b;
-	
-	/**
-	 * power coefficient as used in BPR formula {@code time = freeFlowTime * (1 + b*(flow/capacity)^power}
-	 */
-	private double power; 
+	private final int index;
 
 	/**
-	 * flow amount of traffic. Initialized as 0.
+	 * the store that holds the id, end nodes, capacity, length, BPR 
+	 * coefficients, flow, time and generalized cost of this edge
 	 */
-	private double flow = 0;
-	
+	private final EdgeStore store;
+
 	/**
 	 *  auxiliary flow for use in {@link Network#restrictedInnerMasterProblem(RUM, double)}. Initialized as 0.
 	 */
 	private double auxFlow = 0;
-	
-	/**
-	 * actual travel time on this edge
-	 */
-	private double time = freeFlowTime;
-	
-	/**
-	 * generalized cost defined by {@link Edge#genCost}
-	 */
-	private double genCost;
 
 	/**
-	 * the number of paths defined in some choice set that contain this edge. 
-	 * Cannot be computed internally and is initialized as 0. 
-	 * @see OD#updatePathSizeFactors(RUM)
+	 * Creates an edge as a new row of {@code store}, with all
+	 * properties equal to 0.
+	 * 
+	 * @param store the edge store of the network
 	 */
-	private int numPathsWithEdge =0; 
+	Edge(EdgeStore store) {
+		this.store = store;
+		this.index = store.add();
+	}
 
 	/**
 	 * add flow to current flow
 	 * @param flow the flow to be added
 	 */
 	public void addFlow(double flow) {
-		this.flow += flow;
-	}
-	/**
-	 * @return double the time on the link according to BPR formula
-	 * according to the BPR formula using the current flow
-	 */
-	private double bpr(){
-		return getFreeFlowTime()*(1+getB()*Math.pow(getFlow()/getCapacity(), getPower()));
+		store.flow[index] += flow;
 	}
 
 	double getAuxFlow() {
 		return auxFlow;
 	}
 
+	/**
+	 * b coefficient as used in BPR formula {@code time = freeFlowTime * (1 + b*(flow/capacity)^power}
+	 */
 	double getB() {
-		return b;
+		return store.b[index];
 	}
+	/**
+	 * practical capacity of link as used in BPR formula {@code time = freeFlowTime * (1 + b*(flow/capacity)^power}
+	 */
 	double getCapacity() {
-		return capacity;
+		return store.capacity[index];
 	}
+	/**
+	 * amount of traffic. Initialized as 0.
+	 */
 	double getFlow() {
-		return flow;
+		return store.flow[index];
 	}
 	double getFreeFlowTime() {
-		return freeFlowTime;
+		return store.freeFlowTime[index];
 	}
+	/**
+	 * generalized cost as defined by {@link RUM#genCost(Edge)}
+	 */
 	public double getGenCost() {
-		return genCost;
+		return store.genCost[index];
 	}
+	/**
+	 * head id of node corresponding to origin of this edge
+	 */
 	int getHead() {
-		return head;
+		return store.head[index];
 	}
+	/**
+	 * id of the edge, read from the network file
+	 */
 	int getId() {
-		return id;
+		return store.id[index];
+	}
+	public int getIndex() {
+		return index;
 	}
 	public double getLength() {
-		return length;
+		return store.length[index];
 	}
+	/**
+	 * the number of paths defined in some choice set that contain this edge. 
+	 * Cannot be computed internally and is initialized as 0. 
+	 * @see OD#updatePathSizeFactors(RUM)
+	 */
 	int getNumPathsWithEdge() {
-		return numPathsWithEdge;
+		return store.numPathsWithEdge[index];
 	}
+	/**
+	 * power coefficient as used in BPR formula {@code time = freeFlowTime * (1 + b*(flow/capacity)^power}
+	 */
 	double getPower() {
-		return power;
+		return store.power[index];
 	}
+	/**
+	 * tail id of node corresponding to terminal of this edge
+	 */
 	int getTail() {
-		return tail;
+		return store.tail[index];
 	}
+	/**
+	 * actual travel time on this edge
+	 */
 	public double getTime() {
-		return time;
+		return store.time[index];
 	}
 	void setAuxFlow(double auxFlow) {
 		this.auxFlow = auxFlow;
 	}
 	void setB(double b) {
-		this.b = b;
+		store.b[index] = b;
 	}
 	void setCapacity(double capacity) {
-		this.capacity = capacity;
+		store.capacity[index] = capacity;
 	}
 	public void setFlow(double flow){
-		this.flow = flow;
+		store.flow[index] = flow;
 	}
 	void setFreeFlowTime(double freeFlowTime) {
-		this.freeFlowTime = freeFlowTime;
+		store.freeFlowTime[index] = freeFlowTime;
 	}
 	public void setGenCost(double genCost) {
-		this.genCost = genCost;
+		store.genCost[index] = genCost;
+		store.costsChanged();
 	}
 	void setHead(int head) {
-		this.head = head;
+		store.head[index] = head;
 	}
 	void setId(int id) {
-		this.id = id;
+		store.id[index] = id;
 	}
 	void setLength(double length) {
-		this.length = length;
+		store.length[index] = length;
 	}
 	void setNumPathsWithEdge(int delta) {
-		this.numPathsWithEdge = delta;
+		store.numPathsWithEdge[index] = delta;
 	}
 	void setPower(double power) {
-		this.power = power;
+		store.power[index] = power;
 	}
 	void setTail(int tail) {
-		this.tail = tail;
+		store.tail[index] = tail;
 	}
 	
 	/**
@@ -196,26 +189,12 @@ public class Edge {
 	 *  
 	 *  @param rum the RUM to define the generalized
 	 *  cost to assign
-	 *  @see Edge#updateTime()
+	 *  @see EdgeStore#updateTime(int)
 	 */
 	public void updateCost(RUM rum) {
-		updateTime();
+		store.updateTime(index);
 		double costToReturn = rum.genCost(this);
 		setGenCost(costToReturn);
 
 	}
-	
-	/**
-	 * Updates the total travel time on the edge
-	 * to correspond to the BPR formula evaluated
-	 * with the current flow, using the BPR formula
-	 * parameters {@linkplain Edge#b} and {@linkplain Edge#power}
-	 * that were read into the edge at from the 
-	 * [network]_net.tntp file at instantiation.
-	 */
-	private void updateTime() {
-		this.time = bpr();
-	}
-
-
 }
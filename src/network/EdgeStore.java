@@ -0,0 +1,258 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays store of the state of all edges in a {@link Network}.
+ * Each property is kept in its own primitive column, indexed by the dense
+ * edge index (see {@link Edge#getIndex()}); an {@link Edge} is merely a
+ * handle to one row of the store.
+ * <p>
+ * Keeping the columns contiguous makes the cost update after each network
+ * loading a tight loop over primitive arrays, see
+ * {@link EdgeStore#updateCosts(double, double)}. The loop avoids
+ * {@link Math#pow(double, double)} when the BPR power is an integer, which
+ * it almost always is (4 is standard), and is written without calls or
+ * branches in the loop body so that the JIT compiler can vectorise it.
+ *
+ * @see Network#updateEdgeCosts(choiceModel.RUM)
+ */
+public final class EdgeStore {
+	private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+	/**
+	 * Power class where the BPR power differs between edges, or is not an
+	 * integer.
+	 */
+	private static final int MIXED_POWER = -1;
+
+	int[] id;
+	int[] tail;
+	int[] head;
+	int[] numPathsWithEdge;
+	double[] flow;
+	double[] time;
+	double[] genCost;
+	double[] capacity;
+	double[] freeFlowTime;
+	double[] b;
+	double[] power;
+	double[] length;
+
+	/**
+	 * The number of edges in the store.
+	 */
+	private int size = 0;
+
+	/**
+	 * The BPR power shared by all edges if it is a non-negative integer,
+	 * otherwise {@code MIXED_POWER}. Determined by {@link EdgeStore#finish()}.
+	 */
+	private int uniformPower = MIXED_POWER;
+
+	/**
+	 * Incremented whenever generalized costs change, so that values
+	 * derived from them can tell whether they are stale.
+	 * @see PathTrie#getCost(int)
+	 */
+	private long costVersion = 0;
+
+	EdgeStore(int initialCapacity) {
+		int capacity = Math.max(initialCapacity, DEFAULT_INITIAL_CAPACITY);
+		id = new int[capacity];
+		tail = new int[capacity];
+		head = new int[capacity];
+		numPathsWithEdge = new int[capacity];
+		flow = new double[capacity];
+		time = new double[capacity];
+		genCost = new double[capacity];
+		this.capacity = new double[capacity];
+		freeFlowTime = new double[capacity];
+		b = new double[capacity];
+		power = new double[capacity];
+		length = new double[capacity];
+	}
+
+	/**
+	 * Appends an edge with all properties equal to 0.
+	 *
+	 * @return the dense index of the new edge
+	 */
+	int add() {
+		if (size == flow.length) {
+			int newCapacity = 2 * size;
+			id = Arrays.copyOf(id, newCapacity);
+			tail = Arrays.copyOf(tail, newCapacity);
+			head = Arrays.copyOf(head, newCapacity);
+			numPathsWithEdge = Arrays.copyOf(numPathsWithEdge, newCapacity);
+			flow = Arrays.copyOf(flow, newCapacity);
+			time = Arrays.copyOf(time, newCapacity);
+			genCost = Arrays.copyOf(genCost, newCapacity);
+			capacity = Arrays.copyOf(capacity, newCapacity);
+			freeFlowTime = Arrays.copyOf(freeFlowTime, newCapacity);
+			b = Arrays.copyOf(b, newCapacity);
+			power = Arrays.copyOf(power, newCapacity);
+			length = Arrays.copyOf(length, newCapacity);
+		}
+		return size++;
+	}
+
+	/**
+	 * Trims the columns to the number of edges and classifies the BPR powers.
+	 * Must be called once all edges have been added and their parameters set.
+	 */
+	void finish() {
+		id = Arrays.copyOf(id, size);
+		tail = Arrays.copyOf(tail, size);
+		head = Arrays.copyOf(head, size);
+		numPathsWithEdge = Arrays.copyOf(numPathsWithEdge, size);
+		flow = Arrays.copyOf(flow, size);
+		time = Arrays.copyOf(time, size);
+		genCost = Arrays.copyOf(genCost, size);
+		capacity = Arrays.copyOf(capacity, size);
+		freeFlowTime = Arrays.copyOf(freeFlowTime, size);
+		b = Arrays.copyOf(b, size);
+		power = Arrays.copyOf(power, size);
+		length = Arrays.copyOf(length, size);
+
+		uniformPower = MIXED_POWER;
+		if (size > 0 && power[0] >= 0 && power[0] == (int) power[0]) {
+			uniformPower = (int) power[0];
+			for (int i = 1; i < size; i++) {
+				if (power[i] != power[0]) {
+					uniformPower = MIXED_POWER;
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of edges in the store
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param e dense index of an edge
+	 * @return the generalized cost of the edge
+	 */
+	public double getGenCost(int e) {
+		return genCost[e];
+	}
+
+	/**
+	 * @param e dense index of an edge
+	 * @return the length of the edge
+	 */
+	public double getLength(int e) {
+		return length[e];
+	}
+
+	/**
+	 * @return a number that changes whenever the generalized cost of
+	 * any edge has changed
+	 */
+	long getCostVersion() {
+		return costVersion;
+	}
+
+	/**
+	 * Records that the generalized cost of some edge has changed.
+	 */
+	void costsChanged() {
+		costVersion++;
+	}
+
+	/**
+	 * Sets the flow on all edges to 0.
+	 */
+	void resetFlows() {
+		Arrays.fill(flow, 0, size, 0);
+	}
+
+	/**
+	 * Updates the travel time of all edges with the BPR formula
+	 * {@code time = freeFlowTime * (1 + b*(flow/capacity)^power)}
+	 * evaluated at the current flow.
+	 */
+	void updateTimes() {
+		final double[] flow = this.flow;
+		final double[] capacity = this.capacity;
+		final double[] freeFlowTime = this.freeFlowTime;
+		final double[] b = this.b;
+		final double[] time = this.time;
+		final int n = size;
+		switch (uniformPower) {
+		case 4:
+			for (int i = 0; i < n; i++) {
+				double x = flow[i] / capacity[i];
+				double x2 = x * x;
+				time[i] = freeFlowTime[i] * (1 + b[i] * (x2 * x2));
+			}
+			break;
+		case 1:
+			for (int i = 0; i < n; i++) {
+				time[i] = freeFlowTime[i] * (1 + b[i] * (flow[i] / capacity[i]));
+			}
+			break;
+		case MIXED_POWER:
+			for (int i = 0; i < n; i++) {
+				updateTime(i);
+			}
+			break;
+		default:
+			final int k = uniformPower;
+			for (int i = 0; i < n; i++) {
+				time[i] = freeFlowTime[i] * (1 + b[i] * integerPower(flow[i] / capacity[i], k));
+			}
+		}
+	}
+
+	/**
+	 * Updates the travel time and the generalized cost
+	 * {@code betaTime * time + betaLength * length} of all edges.
+	 *
+	 * @param betaTime the value of time
+	 * @param betaLength the value of length
+	 * @see choiceModel.RUM#genCost(Edge)
+	 */
+	void updateCosts(double betaTime, double betaLength) {
+		updateTimes();
+		final double[] time = this.time;
+		final double[] length = this.length;
+		final double[] genCost = this.genCost;
+		final int n = size;
+		for (int i = 0; i < n; i++) {
+			genCost[i] = betaTime * time[i] + betaLength * length[i];
+		}
+		costVersion++;
+	}
+
+	/**
+	 * Updates the travel time of a single edge with the BPR formula.
+	 *
+	 * @param i the dense index of the edge
+	 */
+	void updateTime(int i) {
+		double x = flow[i] / capacity[i];
+		double p = power[i];
+		int k = (int) p;
+		double factor = (k == p && k >= 0) ? integerPower(x, k) : Math.pow(x, p);
+		time[i] = freeFlowTime[i] * (1 + b[i] * factor);
+	}
+
+	/**
+	 * Raises {@code x} to a non-negative integer power by repeated squaring.
+	 */
+	private static double integerPower(double x, int k) {
+		double result = 1;
+		while (k > 0) {
+			if ((k & 1) == 1) result *= x;
+			x *= x;
+			k >>= 1;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,17 @@
+package network;
+
+/**
+ * Enumerates every acyclic path that satisfies the global and local cost
+ * constraints, by depth-first search from the origin, pruned by the
+ * shortest path distance to the destination. The choice sets are complete,
+ * but their size, and the time to enumerate them, grow combinatorially
+ * with the density of the network and the cost bounds.
+ *
+ * @see KShortestPathsChoiceSetGenerator
+ */
+public class ExhaustiveChoiceSetGenerator implements ChoiceSetGenerator {
+	@Override
+	public void generate(Network network, OD od, double maximumCost, PathSink sink) {
+		network.enumerateAllPaths(od, maximumCost, sink);
+	}
+}
@@ -0,0 +1,126 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * Interns external integer IDs, such as the node numbers of a TNTP file,
+ * as dense indices from 0 to {@code size()-1} in the order in which the IDs
+ * are first seen. The external IDs may be sparse, non-contiguous or negative.
+ * <p>
+ * Lookups use an open-addressing hash table on primitive arrays, so that
+ * translating an ID neither boxes nor allocates. Once the network has been
+ * read, algorithms work on dense indices only, and IDs are translated back
+ * with {@link IdIndex#getId(int)} when output is written.
+ *
+ * @see Network#getNode(int)
+ */
+final class IdIndex {
+	/**
+	 * Marks an empty slot in {@code slotIndices}.
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * External IDs by dense index.
+	 */
+	private int[] ids;
+
+	/**
+	 * Hash table slots holding the external ID of each occupied slot.
+	 */
+	private int[] slotIds;
+
+	/**
+	 * Hash table slots holding the dense index of each occupied slot,
+	 * or {@code EMPTY}.
+	 */
+	private int[] slotIndices;
+
+	private int size = 0;
+
+	IdIndex(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+		ids = new int[Math.max(4, expectedSize)];
+		slotIds = new int[capacity];
+		slotIndices = new int[capacity];
+		Arrays.fill(slotIndices, EMPTY);
+	}
+
+	/**
+	 * @param id an external ID
+	 * @return the dense index of {@code id}, or -1 if it has not been interned
+	 */
+	int getIndex(int id) {
+		int mask = slotIds.length - 1;
+		for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+			int index = slotIndices[slot];
+			if (index == EMPTY) return -1;
+			if (slotIds[slot] == id) return index;
+		}
+	}
+
+	/**
+	 * @param index a dense index
+	 * @return the external ID that was interned as {@code index}
+	 */
+	int getId(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Returns the dense index of {@code id}, assigning the next free
+	 * index if it has not been seen before.
+	 *
+	 * @param id an external ID
+	 * @return the dense index of {@code id}
+	 */
+	int intern(int id) {
+		int mask = slotIds.length - 1;
+		int slot = hash(id) & mask;
+		while (slotIndices[slot] != EMPTY) {
+			if (slotIds[slot] == id) return slotIndices[slot];
+			slot = (slot + 1) & mask;
+		}
+		int index = size++;
+		if (index == ids.length) {
+			ids = Arrays.copyOf(ids, 2 * ids.length);
+		}
+		ids[index] = id;
+		slotIds[slot] = id;
+		slotIndices[slot] = index;
+		if (2 * size > slotIds.length) {
+			rehash(2 * slotIds.length);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the number of interned IDs
+	 */
+	int size() {
+		return size;
+	}
+
+	private void rehash(int capacity) {
+		slotIds = new int[capacity];
+		slotIndices = new int[capacity];
+		Arrays.fill(slotIndices, EMPTY);
+		int mask = capacity - 1;
+		for (int index = 0; index < size; index++) {
+			int slot = hash(ids[index]) & mask;
+			while (slotIndices[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			slotIds[slot] = ids[index];
+			slotIndices[slot] = index;
+		}
+	}
+
+	/**
+	 * Spreads consecutive IDs over the table (Fibonacci hashing).
+	 */
+	private static int hash(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
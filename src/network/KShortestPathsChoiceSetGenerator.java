@@ -0,0 +1,280 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+
+import auxiliary.IndexedMinHeap;
+
+/**
+ * Generates the choice set of an OD from its {@code k} shortest loopless
+ * paths, by Yen's algorithm. The shortest path is found first; each
+ * further path deviates from one of the paths found so far at some spur
+ * node, following the path up to there and then the shortest path to the
+ * destination that avoids the nodes before the spur node and the edges by
+ * which the paths found so far leave it. The cheapest of all deviations
+ * is the next path.
+ * <p>
+ * Paths are generated in order of increasing cost, so generation stops at
+ * the first path that exceeds the global cost bound; paths that violate
+ * the local bound are examined but not added to the choice set. Either
+ * way, at most {@code k} paths are examined per OD, which bounds the time
+ * and memory it takes, unlike {@link ExhaustiveChoiceSetGenerator}. The
+ * spur searches are A* searches towards the destination, guided by the
+ * exact shortest path distances to it, and skip every spur node from which
+ * the global bound cannot be met.
+ */
+public class KShortestPathsChoiceSetGenerator implements ChoiceSetGenerator {
+	private static final int NONE = -1;
+
+	private final int k;
+
+	/**
+	 * @param k the largest number of paths to examine for each OD
+	 */
+	public KShortestPathsChoiceSetGenerator(int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("k must be at least 1, but was " + k + ".");
+		}
+		this.k = k;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * A path from the origin as its nodes and edges by dense index.
+	 */
+	private static final class CandidatePath implements Comparable<CandidatePath> {
+		final int[] nodes;
+		final int[] edges;
+		final double cost;
+
+		CandidatePath(int[] nodes, int[] edges, double cost) {
+			this.nodes = nodes;
+			this.edges = edges;
+			this.cost = cost;
+		}
+
+		@Override
+		public int compareTo(CandidatePath other) {
+			int c = Double.compare(cost, other.cost);
+			if (c != 0) return c;
+			int n = Math.min(edges.length, other.edges.length);
+			for (int i = 0; i < n; i++) {
+				if (edges[i] != other.edges[i]) return edges[i] < other.edges[i] ? -1 : 1;
+			}
+			return edges.length - other.edges.length;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof CandidatePath && Arrays.equals(edges, ((CandidatePath) other).edges);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(edges);
+		}
+	}
+
+	/**
+	 * Labels of the spur searches of one call of {@code generate}.
+	 */
+	private static final class Search {
+		final double[] dist;
+		final int[] predEdge;
+		final int[] marks;
+		final int[] blockedNodes;
+		final int[] blockedEdges;
+		final IndexedMinHeap heap;
+		int mark = 0;
+
+		Search(int numNodes, int numEdges) {
+			dist = new double[numNodes];
+			predEdge = new int[numNodes];
+			marks = new int[numNodes];
+			blockedNodes = new int[numNodes];
+			blockedEdges = new int[numEdges];
+			heap = new IndexedMinHeap(numNodes);
+		}
+	}
+
+	@Override
+	public void generate(Network network, OD od, double maximumCost, PathSink sink) {
+		Topology topology = network.getTopology();
+		double[] genCost = network.getEdgeStore().genCost;
+		int origin = network.getNode(od.O).getIndex();
+		int destination = network.getNode(od.D).getIndex();
+		Search search = new Search(topology.numNodes, topology.edgeTails.length);
+
+		ArrayList<CandidatePath> found = new ArrayList<CandidatePath>();
+		PriorityQueue<CandidatePath> candidates = new PriorityQueue<CandidatePath>();
+		HashSet<CandidatePath> seen = new HashSet<CandidatePath>();
+
+		search.mark++;
+		CandidatePath first = spurPath(network, search, origin, destination, maximumCost, null, 0, 0);
+		if (first != null) {
+			candidates.add(first);
+			seen.add(first);
+		}
+		while (found.size() < k && !candidates.isEmpty()) {
+			CandidatePath path = candidates.poll();
+			if (path.cost > maximumCost) {
+				break;
+			}
+			found.add(path);
+			if (satisfiesLocalConstraint(network, path, genCost)) {
+				sink.add(od, path.edges, path.edges.length);
+			}
+			if (found.size() == k) {
+				break;
+			}
+
+			// Deviations from the new path at each of its nodes
+			double rootCost = 0;
+			for (int j = 0; j < path.edges.length; j++) {
+				int spurNode = path.nodes[j];
+				search.mark++;
+				for (int i = 0; i < j; i++) {
+					search.blockedNodes[path.nodes[i]] = search.mark;
+				}
+				for (CandidatePath other: found) {
+					if (other.edges.length > j && sharesRoot(other, path, j)) {
+						search.blockedEdges[other.edges[j]] = search.mark;
+					}
+				}
+				CandidatePath deviation = spurPath(network, search, spurNode, destination, maximumCost, path, j, rootCost);
+				if (deviation != null && seen.add(deviation)) {
+					candidates.add(deviation);
+				}
+				rootCost += genCost[path.edges[j]];
+			}
+		}
+	}
+
+	/**
+	 * @return true if the first {@code j} edges of the paths are the same
+	 */
+	private static boolean sharesRoot(CandidatePath a, CandidatePath b, int j) {
+		for (int i = j - 1; i >= 0; i--) {
+			if (a.edges[i] != b.edges[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A* search from {@code spurNode} to the destination that avoids the
+	 * nodes and edges blocked with the current mark, and joins the result
+	 * to the first {@code j} edges of {@code root}.
+	 *
+	 * @return the joined path, or null if there is none within the global
+	 * cost bound
+	 */
+	private CandidatePath spurPath(Network network, Search search, int spurNode, int destination, double maximumCost,
+			CandidatePath root, int j, double rootCost) {
+		final Topology topology = network.getTopology();
+		final double[] genCost = network.getEdgeStore().genCost;
+		final int[] offsets = topology.offsets;
+		final int[] heads = topology.heads;
+		final int[] edges = topology.edges;
+		final double[] dist = search.dist;
+		final int[] predEdge = search.predEdge;
+		final int[] marks = search.marks;
+		final int reached = search.mark;
+		final IndexedMinHeap Q = search.heap;
+		double budget = maximumCost - rootCost;
+		if (network.distanceToDestination(spurNode, destination) > budget) {
+			return null;
+		}
+		Q.clear();
+		dist[spurNode] = 0;
+		predEdge[spurNode] = NONE;
+		marks[spurNode] = reached;
+		Q.insert(spurNode, network.distanceToDestination(spurNode, destination));
+		boolean done = false;
+		while (!Q.isEmpty()) {
+			int u = Q.poll();
+			if (u == destination) {
+				done = true;
+				break;
+			}
+			double uDist = dist[u];
+			for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+				int v = heads[a];
+				int e = edges[a];
+				if (search.blockedNodes[v] == reached || search.blockedEdges[e] == reached) {
+					continue;
+				}
+				double alt = uDist + genCost[e];
+				double estimate = alt + network.distanceToDestination(v, destination);
+				if (estimate > budget) {
+					continue;
+				}
+				if (marks[v] != reached) {
+					marks[v] = reached;
+					dist[v] = alt;
+					predEdge[v] = e;
+					Q.insert(v, estimate);
+				} else if (alt < dist[v] && Q.contains(v)) {
+					dist[v] = alt;
+					predEdge[v] = e;
+					Q.decreaseKey(v, estimate);
+				}
+			}
+		}
+		Q.clear();
+		if (!done) {
+			return null;
+		}
+
+		// Join the root and the spur path
+		int spurLength = 0;
+		for (int v = destination; v != spurNode; v = topology.edgeTails[predEdge[v]]) {
+			spurLength++;
+		}
+		int[] pathEdges = new int[j + spurLength];
+		int[] pathNodes = new int[j + spurLength + 1];
+		double cost = 0;
+		for (int i = 0; i < j; i++) {
+			pathEdges[i] = root.edges[i];
+			pathNodes[i] = root.nodes[i];
+		}
+		int v = destination;
+		for (int i = j + spurLength - 1; i >= j; i--) {
+			pathEdges[i] = predEdge[v];
+			pathNodes[i + 1] = v;
+			v = topology.edgeTails[predEdge[v]];
+		}
+		pathNodes[j] = spurNode;
+		// Summed from the origin, as Path#updateCost does
+		for (int i = 0; i < pathEdges.length; i++) {
+			cost += genCost[pathEdges[i]];
+		}
+		return new CandidatePath(pathNodes, pathEdges, cost);
+	}
+
+	/**
+	 * Checks that no subpath costs more than the local maximum cost ratio
+	 * times the shortest path between its end nodes.
+	 */
+	private static boolean satisfiesLocalConstraint(Network network, CandidatePath path, double[] genCost) {
+		if (!network.isLocalConstraintEnabled()) {
+			return true;
+		}
+		DistanceMatrix distances = network.getAllPairsDistances();
+		double ratio = network.getLocalMaximumCostRatio();
+		for (int end = 1; end < path.nodes.length; end++) {
+			double lengthOfSubpath = 0;
+			for (int start = end - 1; start >= 0; start--) {
+				lengthOfSubpath += genCost[path.edges[start]];
+				if (lengthOfSubpath > distances.get(path.nodes[start], path.nodes[end]) * ratio) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,258 @@
+package network;
+
+import java.util.Arrays;
+
+import auxiliary.IndexedMinHeap;
+
+/**
+ * Landmark distances for point-to-point A* searches (ALT: A*, landmarks
+ * and the triangle inequality). For a few landmark nodes {@code L}, the
+ * distances {@code d(L, v)} from and {@code d(v, L)} to every node
+ * {@code v} are computed once, under lower bounds on the edge costs. By
+ * the triangle inequality,
+ * <pre>
+ * d(v, t) &gt;= d(L, t) - d(L, v)   and   d(v, t) &gt;= d(v, L) - d(t, L),
+ * </pre>
+ * so the largest of these over all landmarks is a lower bound on the
+ * remaining cost from {@code v} to the target {@code t}, and a feasible
+ * potential for A*. The bounds stay valid as long as no edge costs less
+ * than its lower bound, which holds for the BPR function, where the
+ * cost at zero flow is the least; see {@link Landmarks#isValidFor(double[])}.
+ * <p>
+ * The landmarks are chosen greedily, each as far as possible from those
+ * chosen before, since landmarks behind the target, seen from the
+ * source, give the tightest bounds.
+ *
+ * @see ShortestPathEngine#ALT
+ */
+final class Landmarks {
+	private static final int NONE = -1;
+
+	private final Topology topology;
+
+	/**
+	 * The edge costs that the landmark distances were computed for.
+	 */
+	private final double[] lowerCosts;
+
+	/**
+	 * Dense index of each landmark node.
+	 */
+	private final int[] landmarks;
+
+	/**
+	 * {@code fromLandmark[i][v]} is the distance from landmark {@code i}
+	 * to node {@code v}, and {@code toLandmark[i][v]} the distance from
+	 * node {@code v} to landmark {@code i}.
+	 */
+	private final double[][] fromLandmark;
+	private final double[][] toLandmark;
+
+	/**
+	 * Selects the landmarks and computes their distances.
+	 *
+	 * @param topology the topology of the network
+	 * @param lowerCosts a lower bound on the cost of each edge by dense
+	 * edge index, which the landmarks keep
+	 * @param numLandmarks the number of landmarks, at most the number of
+	 * nodes
+	 */
+	Landmarks(Topology topology, double[] lowerCosts, int numLandmarks) {
+		this.topology = topology;
+		this.lowerCosts = lowerCosts;
+		int numNodes = topology.numNodes;
+		numLandmarks = Math.min(numLandmarks, numNodes);
+		landmarks = new int[numLandmarks];
+		fromLandmark = new double[numLandmarks][];
+		toLandmark = new double[numLandmarks][];
+		IndexedMinHeap Q = new IndexedMinHeap(numNodes);
+
+		// Start from the node farthest from the first node
+		double[] start = new double[numNodes];
+		search(0, false, start, Q);
+		int next = farthest(start);
+		// Least distance to and from the chosen landmarks
+		double[] separation = new double[numNodes];
+		Arrays.fill(separation, Double.POSITIVE_INFINITY);
+		for (int i = 0; i < numLandmarks; i++) {
+			int landmark = next;
+			landmarks[i] = landmark;
+			fromLandmark[i] = new double[numNodes];
+			toLandmark[i] = new double[numNodes];
+			search(landmark, false, fromLandmark[i], Q);
+			search(landmark, true, toLandmark[i], Q);
+			for (int v = 0; v < numNodes; v++) {
+				double round = fromLandmark[i][v] + toLandmark[i][v];
+				if (round < separation[v]) {
+					separation[v] = round;
+				}
+			}
+			separation[landmark] = -1;
+			next = farthest(separation);
+		}
+	}
+
+	/**
+	 * @return the first node with the largest value, counting nodes that
+	 * cannot be reached at all as the farthest; negative values are skipped
+	 */
+	private static int farthest(double[] values) {
+		int best = 0;
+		for (int v = 0; v < values.length; v++) {
+			if (values[v] > values[best]) {
+				best = v;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Dijkstra's algorithm under the lower costs, from {@code root} or,
+	 * on the reverse network, to {@code root}.
+	 */
+	private void search(int root, boolean reverse, double[] dist, IndexedMinHeap Q) {
+		final int[] offsets = reverse ? topology.inOffsets : topology.offsets;
+		final int[] ends = reverse ? topology.inTails : topology.heads;
+		final int[] edges = reverse ? topology.inEdges : topology.edges;
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		dist[root] = 0;
+		Q.clear();
+		Q.insert(root, 0);
+		while (!Q.isEmpty()) {
+			int u = Q.poll();
+			double uDist = dist[u];
+			for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+				int v = ends[a];
+				double alt = uDist + lowerCosts[edges[a]];
+				if (alt < dist[v]) {
+					dist[v] = alt;
+					Q.insertOrDecreaseKey(v, alt);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of landmarks
+	 */
+	int size() {
+		return landmarks.length;
+	}
+
+	/**
+	 * @param genCost the current cost of each edge by dense edge index
+	 * @return true if no edge costs less than the lower bound that the
+	 * landmark distances were computed for
+	 */
+	boolean isValidFor(double[] genCost) {
+		for (int e = 0; e < lowerCosts.length; e++) {
+			if (genCost[e] < lowerCosts[e]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param v the dense index of a node
+	 * @param target the dense index of the target
+	 * @return a lower bound on the distance from {@code v} to {@code target}
+	 */
+	private double potential(int v, int target) {
+		double bound = 0;
+		for (int i = 0; i < landmarks.length; i++) {
+			double[] from = fromLandmark[i];
+			double[] to = toLandmark[i];
+			// Infinite distances carry no bound
+			double forward = from[target] - from[v];
+			if (forward > bound && from[v] < Double.POSITIVE_INFINITY) {
+				bound = forward;
+			}
+			double backward = to[v] - to[target];
+			if (backward > bound && to[target] < Double.POSITIVE_INFINITY) {
+				bound = backward;
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * A* search from {@code source} to {@code target}, guided by the
+	 * landmark potentials. Only the labels of the nodes the search reaches
+	 * are touched, so a query costs nothing for the rest of the network.
+	 * The edges of the shortest path are written to
+	 * {@code workspace.pathEdges}, and the number of nodes settled to
+	 * {@code workspace.settledNodes}.
+	 *
+	 * @param source the dense index of the source
+	 * @param target the dense index of the target
+	 * @param genCost the cost of each edge by dense edge index
+	 * @param workspace the workspace of the search
+	 * @return the number of edges in the shortest path, or -1 if the
+	 * target cannot be reached
+	 */
+	int query(int source, int target, double[] genCost, ShortestPathWorkspace workspace) {
+		workspace.ensureQueryScratch();
+		final double[] dist = workspace.queryDist;
+		final int[] predEdge = workspace.queryPredEdge;
+		final int[] marks = workspace.queryMarks;
+		final int reached = workspace.nextQueryMark();
+		final int settled = reached + 1;
+		final int[] offsets = topology.offsets;
+		final int[] heads = topology.heads;
+		final int[] edges = topology.edges;
+		final IndexedMinHeap Q = workspace.heap;
+		Q.clear();
+
+		int numSettled = 0;
+		dist[source] = 0;
+		predEdge[source] = NONE;
+		marks[source] = reached;
+		Q.insert(source, potential(source, target));
+		while (!Q.isEmpty()) {
+			int u = Q.poll();
+			marks[u] = settled;
+			numSettled++;
+			if (u == target) {
+				break;
+			}
+			double uDist = dist[u];
+			for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+				int v = heads[a];
+				if (marks[v] == settled) {
+					continue;
+				}
+				double alt = uDist + genCost[edges[a]];
+				if (marks[v] != reached) {
+					marks[v] = reached;
+					dist[v] = alt;
+					predEdge[v] = edges[a];
+					Q.insert(v, alt + potential(v, target));
+				} else if (alt < dist[v]) {
+					dist[v] = alt;
+					predEdge[v] = edges[a];
+					Q.decreaseKey(v, alt + potential(v, target));
+				}
+			}
+		}
+		Q.clear();
+		workspace.settledNodes = numSettled;
+		if (marks[target] != settled) {
+			return -1;
+		}
+
+		// Backtrack from the target
+		final int[] tails = topology.edgeTails;
+		int numEdges = 0;
+		for (int v = target; v != source; v = tails[predEdge[v]]) {
+			numEdges++;
+		}
+		workspace.ensurePathCapacity(numEdges);
+		int v = target;
+		for (int i = numEdges - 1; i >= 0; i--) {
+			workspace.pathEdges[i] = predEdge[v];
+			v = tails[predEdge[v]];
+		}
+		return numEdges;
+	}
+}
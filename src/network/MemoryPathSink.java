@@ -0,0 +1,33 @@
+package network;
+
+import java.util.List;
+
+/**
+ * Keeps the paths in memory, as {@link Path}s stored in a 
+ * {@link PathTrie} and added to a list, usually {@link OD#R}.
+ */
+public class MemoryPathSink implements PathSink {
+	private final PathTrie trie;
+	private final List<Path> paths;
+
+	/**
+	 * @param trie the trie in which to store the edges of the paths, which
+	 * may be shared with the sinks of other ODs of the same origin
+	 * @param paths the list to which to add the paths
+	 */
+	public MemoryPathSink(PathTrie trie, List<Path> paths) {
+		this.trie = trie;
+		this.paths = paths;
+	}
+
+	@Override
+	public void add(OD od, int[] pathEdges, int numEdges) {
+		int leaf = trie.insert(pathEdges, numEdges);
+		long fingerprint = Path.fingerprint(pathEdges, numEdges);
+		paths.add(new Path(trie, leaf, fingerprint, od));
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -5,12 +5,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -20,9 +18,15 @@ import java.util.HashSet;
 import java.util.InputMismatchException;
 import java.util.Locale;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
+import auxiliary.BucketQueue;
 import auxiliary.ConvergencePattern;
-import auxiliary.MyMinPriorityQueue;
+import auxiliary.IndexedMinHeap;
 import auxiliary.StdDraw;
 import choiceModel.PSL;
 import choiceModel.RSUET;
@@ -53,8 +57,13 @@ import refCostFun.RefCostFun;
 public class Network {
 
 	public char delim = ';';
-	public long  totalNumberOfPaths = 0;
-	public long  totalNumberOfNodesInPaths = 0;
+	/**
+	 * The number of paths, and of nodes in them, added to the universal
+	 * choice sets, counted by all threads of a parallel generation.
+	 * @see Network#getTotalNumberOfPaths()
+	 */
+	private final AtomicLong totalNumberOfPaths = new AtomicLong();
+	private final AtomicLong totalNumberOfNodesInPaths = new AtomicLong();
 	public int OCounter = 0;
 	public double maximumCostRatio = 50;
 	public boolean universalChoiceSetsStored = false;
@@ -66,8 +75,91 @@ public class Network {
 	public Boolean useLocalStorage;
 	private String localStorageDirectory;
 
+	/**
+	 * The universal choice sets, and the considered paths exported by
+	 * {@link Network#exportConsideredPaths()}, in the local storage
+	 * directory; opened when first used.
+	 */
+	private ChoiceSetStore universalStore;
+	private ChoiceSetStore consideredStore;
+	private static final String UNIVERSAL_STORE_NAME = "Paths";
+	private static final String CONSIDERED_STORE_NAME = "Considered";
+
+	/**
+	 * The number of ODs whose choice sets are loaded ahead, and waiting 
+	 * to be stored, when the local storage is processed.
+	 * @see ChoiceSetPipeline
+	 */
+	private int localStoragePipelineDepth = 8;
+
+	/**
+	 * Sets how many ODs ahead the choice sets in the local storage are
+	 * loaded by {@link Network#updateUniversalChoiceSetCosts()} and 
+	 * {@link Network#cutUniversalChoiceSets(double)}, while the costs of
+	 * the current OD are computed; as many computed choice sets may wait to
+	 * be written. Deeper pipelines even out slow reads and writes, at the
+	 * cost of memory for the choice sets in flight.
+	 * 
+	 * @param depth the number of ODs, at least 1; the default is 8
+	 */
+	public void setLocalStoragePipelineDepth(int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("The pipeline depth must be at least 1, but was " + depth + ".");
+		}
+		this.localStoragePipelineDepth = depth;
+	}
+
+	public int getLocalStoragePipelineDepth() {
+		return localStoragePipelineDepth;
+	}
+
+	/**
+	 * Decides which universal choice sets are held in memory when the 
+	 * local storage is used; created when first used.
+	 */
+	private ChoiceSetManager choiceSetManager;
+	private long choiceSetMemoryBudget = 0;
+
+	/**
+	 * Sets the estimated number of bytes of universal choice sets that
+	 * are held in memory when the local storage is used, rather than
+	 * stored as soon as they have been used. The choice sets of ODs with
+	 * much demand, of small choice sets, and of recently used ones are 
+	 * preferred.
+	 * 
+	 * @param bytes the budget, at least 0; the default is 0
+	 * @see ChoiceSetManager
+	 */
+	public void setChoiceSetMemoryBudget(long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("The memory budget must be non-negative, but was " + bytes + ".");
+		}
+		this.choiceSetMemoryBudget = bytes;
+		if (choiceSetManager != null) {
+			choiceSetManager.setBudget(bytes);
+		}
+	}
+
+	public long getChoiceSetMemoryBudget() {
+		return choiceSetMemoryBudget;
+	}
+
+	/**
+	 * @return the manager through which the universal choice sets are
+	 * accessed, with the numbers of hits and misses in memory
+	 */
+	public synchronized ChoiceSetManager getChoiceSetManager() {
+		if (choiceSetManager == null) {
+			choiceSetManager = new ChoiceSetManager(this);
+			choiceSetManager.setBudget(choiceSetMemoryBudget);
+		}
+		return choiceSetManager;
+	}
+
 	public void setLocalStorageDirectory(String localStorageDirectory){
 		this.localStorageDirectory = localStorageDirectory;
+		universalStore = null;
+		consideredStore = null;
 	}
 
 	public void setIsNetworkBirectional(boolean isNetworkBirectional){
@@ -93,43 +185,52 @@ public class Network {
 	private double localMaximumCostRatio;
 
 	/**  
-	 * For a shortest path tree of any node in the network,
-	 * for all other nodes the id of the previous node in
-	 * the shortest path to the destination is stored in
-	 * this HashMap.
+	 * The shortest path distance between every pair of nodes,
+	 * indexed by dense node index.
 	 * @see Network#generateAllShortestPathTrees()
 	 */
-	public HashMap<Integer,HashMap<Integer,Integer>> dijkstraPrevs = new HashMap<Integer,HashMap<Integer,Integer>>();
+	private DistanceMatrix allPairsDistances;
 
 	/**  
-	 * For a shortest path tree of any node in the network,
-	 * the shortest distance from all other nodes is stored
-	 * in this HashMap.
-	 * @see Network#generateAllShortestPathTrees()
+	 * The shortest path distance from every node to each node with
+	 * demand to it; the row of the node with dense index {@code v} is
+	 * {@code destinationRows[v]}, which is -1 if there is no demand to it.
+	 * @see Network#generateDestinationTrees()
 	 */
-	public HashMap<Integer,HashMap<Integer,Double>> dijkstraDists = new HashMap<Integer,HashMap<Integer,Double>>();
+	private DistanceMatrix distancesToDestinations;
+	private int[] destinationRows;
+
+	/**  
+	 * The largest number of bytes that {@code allPairsDistances} may 
+	 * take on the heap before it is kept in a memory-mapped file.
+	 * @see Network#setDistanceMatrixHeapBudget(long)
+	 */
+	private long distanceMatrixHeapBudget = 256L << 20;
 
 	public double minimumFlowToBeConsideredUsed = 0;
 
 
 	/**
-	 * This hashmap indexes the set of network nodes by
-	 * their integer ID.
+	 * Interns the node IDs of the network files as dense indices,
+	 * so that {@code nodeArray[nodeIndex.getIndex(id)]} is the node
+	 * with ID {@code id}. Node IDs need not be contiguous.
+	 * @see Network#getNode(int)
 	 */
-	private HashMap<Integer,Node> nodes; 
+	private IdIndex nodeIndex;
 
 	/**
-	 * Set of edges, implemented as an array. This structure
-	 * requires that edges be indexed from 1 to N, where N
-	 * is the number of edges in the network. Could easily, 
-	 * and probably should, be implemented as a HashMap. 
-	 * <p>
-	 * Is now made redundant with {@code edgesNodePair}; should 
-	 * be deprecated and phased out.
-	 * @see Network#getNode(int)
-	 * @see Network#edgesNodePair
+	 * Interns edge IDs as dense indices into {@code edgeArray}. 
+	 * Opposite edges of a bidirectional network are interned by
+	 * their negative IDs.
+	 * @see Network#getEdge(int)
 	 */
-	private HashMap<Integer,Edge> edges; // Set of edges
+	private IdIndex edgeIndex;
+
+	/**
+	 * The number of edges read from the network file; these occupy
+	 * the first {@code numEdges} positions of {@code edgeArray}.
+	 */
+	private int numEdges;
 	/**
 	 * Edges identified by their tail and head, which is not 
 	 * only preferable to having a dedicated set of edge
@@ -142,10 +243,119 @@ public class Network {
 	private HashMap<Integer,HashMap<Integer,Edge>> edgesNodePair = new HashMap<Integer,HashMap<Integer,Edge>>(); //set of node pairs
 
 	/**
-	 * Set of Origin-destination relations, so that {@code ods.get(i).get(j)}
-	 * gets the OD that goes from node {@code i} to {@code j}.
+	 * Nodes by their dense index, so that {@code nodeArray[node.getIndex()] == node}.
+	 * This is the set of network nodes.
 	 */
-	public HashMap<Integer, HashMap<Integer,OD>> ods; // Set of ODs
+	private Node[] nodeArray;
+
+	/**
+	 * Edges by their dense index, so that {@code edgeArray[edge.getIndex()] == edge}.
+	 * This is the set of edges, followed by the opposite edges created for 
+	 * bidirectional networks.
+	 */
+	private Edge[] edgeArray;
+
+	/**
+	 * Capacity, BPR coefficients, flow, time and generalized cost of all
+	 * edges, stored column by column and indexed like {@code edgeArray}.
+	 * @see EdgeStore
+	 */
+	private EdgeStore edgeStore;
+
+	/**
+	 * The algorithm that generates the universal choice set of each OD.
+	 * @see Network#setChoiceSetGenerator(ChoiceSetGenerator)
+	 */
+	private ChoiceSetGenerator choiceSetGenerator = new ExhaustiveChoiceSetGenerator();
+
+	/**
+	 * Outgoing adjacency of the network in compressed-sparse-row form. This
+	 * is what the shortest path and enumeration algorithms traverse.
+	 * @see Topology
+	 */
+	private Topology topology;
+
+	/**
+	 * The workspace of the shortest path searches that are not given one
+	 * explicitly, such as those of {@link Network#columnGeneration()}; 
+	 * created on first use.
+	 */
+	private ShortestPathWorkspace defaultWorkspace;
+
+	/**
+	 * The number of threads that run the per-origin shortest path searches
+	 * of {@link Network#columnGeneration()} and 
+	 * {@link Network#allOrNothing()}; 1 runs them in the calling thread.
+	 * @see Network#setParallelism(int)
+	 */
+	private int parallelism = 1;
+
+	/**
+	 * The priority queue of the one-to-all shortest path searches.
+	 * @see Network#setShortestPathEngine(ShortestPathEngine)
+	 */
+	private ShortestPathEngine shortestPathEngine = ShortestPathEngine.HEAP;
+
+	/**
+	 * Bucket width of {@link ShortestPathEngine#DIAL}.
+	 * @see Network#setDialResolution(double)
+	 */
+	private double dialResolution = 1;
+
+	/**
+	 * The shortest path trees kept between column generations, or null
+	 * if they are computed from scratch each time.
+	 * @see Network#setIncrementalShortestPaths(boolean)
+	 */
+	private ShortestPathTrees shortestPathTrees;
+	private boolean incrementalShortestPaths = false;
+	private double shortestPathRepairTolerance = 0;
+
+	/**
+	 * The contraction hierarchy of {@link ShortestPathEngine#CCH}, built on
+	 * first use and customized for the edge costs of cost version
+	 * {@code hierarchyCostVersion}. Both are volatile, so that the searches
+	 * of every origin can check the hierarchy without locking the network.
+	 * @see Network#getContractionHierarchy()
+	 */
+	private volatile ContractionHierarchy contractionHierarchy;
+	private volatile long hierarchyCostVersion = -1;
+
+	/**
+	 * The landmarks of {@link ShortestPathEngine#ALT}, built on first use
+	 * and checked against the edge costs of each new cost version; volatile
+	 * for the same reason as the contraction hierarchy.
+	 * @see Network#setNumLandmarks(int)
+	 */
+	private volatile Landmarks landmarks;
+	private int numLandmarks = 8;
+	private volatile long landmarksCostVersion = -1;
+
+	/**
+	 * The number of A* searches and of the nodes they settled.
+	 * @see Network#getNumAStarQueries()
+	 */
+	private final AtomicLong numAStarQueries = new AtomicLong();
+	private final AtomicLong numAStarSettledNodes = new AtomicLong();
+
+	/**
+	 * Pool of the parallel searches, created on first use by
+	 * {@link Network#getPool()}.
+	 */
+	private volatile ForkJoinPool pool;
+
+	/**
+	 * Workspaces of the pool threads that are not currently searching.
+	 */
+	private final ConcurrentLinkedQueue<ShortestPathWorkspace> idleWorkspaces = 
+			new ConcurrentLinkedQueue<ShortestPathWorkspace>();
+
+	/**
+	 * Set of Origin-destination relations, grouped by origin, so that 
+	 * {@code ods.get(i,j)} gets the OD that goes from node {@code i} to {@code j}.
+	 * @see ODTable
+	 */
+	public ODTable ods; // Set of ODs
 
 	/**
 	 * "general" big-M, but it is cleaner to implement this as a local
@@ -225,17 +435,44 @@ public class Network {
 	}
 
 	/**
-	 * Constructs a new path object and adds it
-	 * to the restricted choice set.
+	 * Counts the paths that a {@link ChoiceSetGenerator} hands to a sink
+	 * while the universal choice sets are generated.
 	 * 
-	 * @param od the OD relation of the path to be added
-	 * @param newNodeSeq the node sequence of the path to be added
-	 * as an array of integers
-	 * @see Network#generateUniversalChoiceSets()
+	 * @see Network#getTotalNumberOfPaths()
+	 */
+	private final class CountingPathSink implements PathSink {
+		private final PathSink sink;
+
+		CountingPathSink(PathSink sink) {
+			this.sink = sink;
+		}
+
+		@Override
+		public void add(OD od, int[] pathEdges, int numEdges) {
+			sink.add(od, pathEdges, numEdges);
+			totalNumberOfPaths.incrementAndGet();
+			totalNumberOfNodesInPaths.addAndGet(numEdges + 1);
+		}
+
+		@Override
+		public void close() throws IOException {
+			sink.close();
+		}
+	}
+
+	/**
+	 * @return the number of paths added to the universal choice sets
+	 */
+	public long getTotalNumberOfPaths() {
+		return totalNumberOfPaths.get();
+	}
+
+	/**
+	 * @return the total number of nodes in the paths added to the 
+	 * universal choice sets
 	 */
-	private void addPathToUniversalChoiceSet(OD od, int[] newNodeSeq) {
-		Path addThisPath = new Path(nodeSeqAsEdgeList(newNodeSeq),od);
-		od.R.add(addThisPath);
+	public long getTotalNumberOfNodesInPaths() {
+		return totalNumberOfNodesInPaths.get();
 	}
 
 	/**
@@ -257,18 +494,40 @@ public class Network {
 	 * 
 	 */
 	public void allOrNothing() {
-		int lastOrigin = -3;
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) {// For each OD
-				if (od.O != lastOrigin) {
-					//OD pair are sorted by O first. Dijkstra is required once for each origin with demand from it. 
-					dijkstraMinPriorityQueue(this.getNode(od.O));
+		forEachOrigin(false);
+	}
+
+	/**
+	 * All-or-nothing assignment on the ODs of one origin.
+	 * 
+	 * @param origin the index of the origin in {@link Network#ods}
+	 * @param workspace the workspace of the shortest path search
+	 * @see Network#allOrNothing()
+	 */
+	private void allOrNothing(int origin, ShortestPathWorkspace workspace) {
+		int start = ods.getOriginStart(origin);
+		int end = ods.getOriginEnd(origin);
+		Landmarks landmarks = null;
+		// Dijkstra is required once for each origin with demand from it.
+		if (shortestPathEngine == ShortestPathEngine.ALT) {
+			landmarks = getLandmarks();
+		} else {
+			dijkstraToDestinations(this.getNode(ods.get(start).O), workspace);
+		}
+		for (int i = start; i < end; i++) {// For each OD of the origin
+			OD od = ods.get(i);
+			Path path;
+			if (landmarks != null) {
+				int numEdgesInPath = aStar(od, landmarks, workspace);
+				if (numEdgesInPath < 0) {
+					continue; // Destination cannot be reached
 				}
-				lastOrigin = od.O;
-				Path path = shortestPath(od);
-				od.addPath(path);// Add shortest path to choice set
-				path.setFlow(od.demand); // Assign all traffic to shortest path
+				path = toPath(od, numEdgesInPath, workspace);
+			} else {
+				path = shortestPath(od, workspace);
 			}
+			od.addPath(path);// Add shortest path to choice set
+			path.setFlow(od.demand); // Assign all traffic to shortest path
 		}
 	}
 
@@ -283,13 +542,11 @@ public class Network {
 	public double calculateAvgChoiceSetSize() {
 		double numUsedRoutesTotal = 0;
 		double numOds = 0;
-		for (HashMap<Integer,OD> m: ods.values()) {
-			for (OD od: m.values()) {
-				numOds ++;
-				for (Path path: od.restrictedChoiceSet) {
-					if (path.getFlow() > 0) {
-						numUsedRoutesTotal++;
-					}
+		for (OD od: ods) {
+			numOds ++;
+			for (Path path: od.restrictedChoiceSet) {
+				if (path.getFlow() > 0) {
+					numUsedRoutesTotal++;
 				}
 			}
 		}
@@ -304,11 +561,7 @@ public class Network {
 	 * @return the number of OD-relations
 	 */
 	public int calculateNumOd() {
-		int sum = 0;
-		for (HashMap<Integer,OD> m: ods.values()) {
-			sum += m.size();
-		}
-		return sum;
+		return ods.size();
 	}
 
 	/**
@@ -319,10 +572,8 @@ public class Network {
 	 */
 	public double calculateTotalDemand() {
 		double sum = 0;
-		for (HashMap<Integer,OD> m: ods.values()) {
-			for (OD od: m.values()) {
-				sum += od.demand;
-			}
+		for (OD od: ods) {
+			sum += od.demand;
 		}
 		return sum;
 	}
@@ -334,33 +585,170 @@ public class Network {
 	 * @return true if successful, false otherwise
 	 */
 	public boolean columnGeneration() {
-		Path path;
-		int previousOD = -3;
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				if (od.O != previousOD) {
-					dijkstraMinPriorityQueue(this.getNode(od.O));
-				}
-				previousOD = od.O;
-
-				path = shortestPath(od);
-				// If current shortest path is not already in the choice set, add it
-				boolean alreadyInChoiceSet = false;
-				for (int j = 0; j < od.restrictedChoiceSet.size(); j++) {
-					if (path.equals(od.restrictedChoiceSet.get(j))) {
-						alreadyInChoiceSet = true;
-						break;
-					}
+		if (incrementalShortestPaths) {
+			if (shortestPathTrees == null || shortestPathTrees.getTolerance() != shortestPathRepairTolerance) {
+				shortestPathTrees = new ShortestPathTrees(topology, edgeStore, ods.getNumOrigins(), shortestPathRepairTolerance);
+			}
+			shortestPathTrees.prepare();
+		} else {
+			shortestPathTrees = null;
+		}
+		forEachOrigin(true);
+		if (shortestPathTrees != null) {
+			shortestPathTrees.finish();
+		}
+		return true;
+	}
+
+	/**
+	 * Column generation on the ODs of one origin.
+	 * 
+	 * @param origin the index of the origin in {@link Network#ods}
+	 * @param workspace the workspace of the shortest path search
+	 * @see Network#columnGeneration()
+	 */
+	private void columnGeneration(int origin, ShortestPathWorkspace workspace) {
+		int start = ods.getOriginStart(origin);
+		int end = ods.getOriginEnd(origin);
+		Node originNode = this.getNode(ods.get(start).O);
+		int[] predEdge = null;
+		Landmarks landmarks = null;
+		if (shortestPathTrees != null) {
+			shortestPathTrees.update(origin, originNode.getIndex(), workspace);
+			predEdge = shortestPathTrees.getPredEdges(origin);
+		} else if (shortestPathEngine == ShortestPathEngine.ALT) {
+			landmarks = getLandmarks();
+		} else {
+			dijkstraToDestinations(originNode, workspace);
+			predEdge = workspace.predEdge;
+		}
+		for (int i = start; i < end; i++) { // For each OD-pair of the origin
+			OD od = ods.get(i);
+			int numEdgesInPath = landmarks != null ? aStar(od, landmarks, workspace) : backtrackShortestPath(od, predEdge, workspace);
+			if (numEdgesInPath < 0) {
+				continue; // Destination cannot be reached
+			}
+			int[] pathEdges = workspace.pathEdges;
+			long fingerprint = Path.fingerprint(pathEdges, numEdgesInPath);
+			// If current shortest path is not already in the choice set, add it
+			if (!od.containsPath(pathEdges, numEdgesInPath, fingerprint)) {
+				Path path = new Path(Arrays.copyOf(pathEdges, numEdgesInPath), edgeStore, od);
+				od.addPath(path);
+				path.updateCost();
+				if (od.getMinimumCost() > path.genCost) od.setMinimumCost(path.genCost);
+				od.pathWasAddedDuringColumnGeneration = true;
+			}
+		}
+	}
+
+	/**
+	 * Runs column generation or all-or-nothing assignment for every origin,
+	 * in the calling thread if {@code parallelism} is 1 and on a fork-join
+	 * pool otherwise. The work of an origin only reads the network and
+	 * writes to the ODs of that origin, and each thread searches in a
+	 * workspace of its own, so the result does not depend on how the 
+	 * origins are divided between threads.
+	 * 
+	 * @param columnGeneration true for column generation, false for
+	 * all-or-nothing assignment
+	 */
+	private void forEachOrigin(boolean columnGeneration) {
+		int numOrigins = ods.getNumOrigins();
+		if (shortestPathEngine == ShortestPathEngine.CCH) {
+			getContractionHierarchy();
+		} else if (shortestPathEngine == ShortestPathEngine.ALT) {
+			getLandmarks();
+		}
+		if (parallelism == 1 || numOrigins < 2) {
+			ShortestPathWorkspace workspace = getDefaultWorkspace();
+			for (int origin = 0; origin < numOrigins; origin++) {
+				if (columnGeneration) {
+					columnGeneration(origin, workspace);
+				} else {
+					allOrNothing(origin, workspace);
 				}
-				if (!alreadyInChoiceSet) {
-					od.addPath(path);
-					path.updateCost();
-					if (od.getMinimumCost() > path.genCost) od.setMinimumCost(path.genCost);
-					od.pathWasAddedDuringColumnGeneration = true;
+			}
+			return;
+		}
+		getPool().invoke(new OriginTask(0, numOrigins, columnGeneration));
+	}
+
+	/**
+	 * Fork-join task over a range of origins, split in halves until each
+	 * task is a single origin.
+	 */
+	private class OriginTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+		private final boolean columnGeneration;
+
+		OriginTask(int from, int to, boolean columnGeneration) {
+			this.from = from;
+			this.to = to;
+			this.columnGeneration = columnGeneration;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new OriginTask(from, mid, columnGeneration), 
+						new OriginTask(mid, to, columnGeneration));
+				return;
+			}
+			ShortestPathWorkspace workspace = idleWorkspaces.poll();
+			if (workspace == null) {
+				workspace = createShortestPathWorkspace();
+			}
+			try {
+				if (columnGeneration) {
+					columnGeneration(from, workspace);
+				} else {
+					allOrNothing(from, workspace);
 				}
+			} finally {
+				idleWorkspaces.add(workspace);
 			}
 		}
-		return true;
+	}
+
+	/**
+	 * Sets the number of threads of column generation and all-or-nothing
+	 * assignment, which split the origins between them. The result is 
+	 * the same for any number of threads.
+	 * 
+	 * @param parallelism the number of threads; 1 runs everything in the
+	 * calling thread
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1, but was " + parallelism + ".");
+		}
+		if (parallelism != this.parallelism && pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the fork-join pool of the parallel work, created with the
+	 * current parallelism if there is none
+	 */
+	private synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	/**
+	 * @return the number of threads of column generation and 
+	 * all-or-nothing assignment
+	 */
+	public int getParallelism() {
+		return parallelism;
 	}
 
 	/**
@@ -377,112 +765,567 @@ public class Network {
 	 * {@code maximumCostRatio * od.getMinimumCost() >= path.genCost}
 	 * are removed.
 	 */
-	public void cutUniversalChoiceSets(double maximumCostRatio) {
+	public void cutUniversalChoiceSets(final double maximumCostRatio) {
 		updateUniversalChoiceSetCosts();
 		if (maximumCostRatio == -1) {
-			for (HashMap<Integer,OD> m: ods.values()) {
-				for (OD od: m.values()) {
-					od.restrictedChoiceSet = od.R;
-					od.R = null; //erase universal choice set for safety reasons
-				}
+			for (OD od: ods) {
+				//erase universal choice set for safety reasons
+				od.restrictedChoiceSet = getChoiceSetManager().detach(od);
 			}
 			isUniversalChoiceSetsGenerated = false;
 			return;
 		}//else
 
-		for (HashMap<Integer,OD> m: ods.values()) {
-			for (OD od: m.values()) {
-				if(useLocalStorage){
-					try {
-						loadUniversalChoiceSetFromStorage(od);
-					} catch (IOException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}
-				}
-				Collections.sort(od.R);
-				od.setMinimumCost(od.R.get(0).genCost);
-				double maximumCost = maximumCostRatio * od.getMinimumCost();
-				od.restrictedChoiceSet = new ArrayList<Path>();
-				for (Path path: od.R) {
-					if (path.genCost <= maximumCost) {
-						od.restrictedChoiceSet.add(path);
-					} else break;
-				}
-				if(useLocalStorage){
-					try {
-						transferUniversalChoiceSetToStorage(od);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-					od.R.clear();
-				}
+		getChoiceSetManager().forEach(new ChoiceSetPipeline.Stage() {
+			@Override
+			public void process(OD od) {
+				cutUniversalChoiceSet(od, maximumCostRatio);
 			}
+		});
+		if(useLocalStorage){
+			flushUniversalStore();
 		}
+	}
 
+	/**
+	 * Sets the restricted choice set of an OD to the paths of its 
+	 * universal choice set that cost at most {@code maximumCostRatio} 
+	 * times the cheapest, sorting the universal choice set by cost.
+	 */
+	private void cutUniversalChoiceSet(OD od, double maximumCostRatio) {
+		Collections.sort(od.R);
+		od.setMinimumCost(od.R.get(0).genCost);
+		double maximumCost = maximumCostRatio * od.getMinimumCost();
+		od.restrictedChoiceSet = new ArrayList<Path>();
+		for (Path path: od.R) {
+			if (path.genCost <= maximumCost) {
+				od.restrictedChoiceSet.add(path);
+			} else break;
+		}
 	}
 
 	/**
-	 * An efficient implementation of the dijkstra algorithm using a augmented
-	 * min-priority queue with a mapped binary heap. Also includes early
-	 * termination, i.e. when all destinations from the node have been
-	 * solved, the algorithm stops. Uses relatively a lot of memory, but 
-	 * this is usually a minor issue. 
+	 * An efficient implementation of the dijkstra algorithm using an
+	 * indexed min-priority queue, finding the shortest path from
+	 * {@code originNode} to every node. Uses the default workspace of the
+	 * network, so only one such search can run at a time.
 	 * 
 	 * @param originNode the node from which to find the shortest path to 
-	 * all destinations with demand from the node. 
+	 * all other nodes. 
 	 * @return true if success, false otherwise
+	 * @see Network#dijkstraMinPriorityQueue(Node, ShortestPathWorkspace)
 	 */
 	public boolean dijkstraMinPriorityQueue(Node originNode) {
-		int originNodeID = originNode.getId();
-		//Initialization
+		dijkstraMinPriorityQueue(originNode, getDefaultWorkspace());
+		return true;
+	}
 
-		MyMinPriorityQueue<Node> Q = new MyMinPriorityQueue<Node>();
-		HashSet<Integer> Qbuddy = new HashSet<Integer>(this.getNumNodes()/3); //default initial capacity is one third of network size
-		HashSet<Integer> destinations = new HashSet<Integer>();
+	/**
+	 * Dijkstra's algorithm on the priority queue selected by 
+	 * {@link Network#setShortestPathEngine(ShortestPathEngine)}, by default
+	 * an {@linkplain IndexedMinHeap} keyed by dense node index, writing the shortest path tree from {@code originNode} to
+	 * every node to {@code workspace}. The network is only read, so searches
+	 * in different workspaces may run concurrently, and a search does not
+	 * allocate.
+	 * 
+	 * @param originNode the node from which to find the shortest path to 
+	 * all other nodes
+	 * @param workspace the workspace to hold the labels of the search
+	 * @see Network#dijkstraToDestinations(Node, ShortestPathWorkspace)
+	 */
+	public void dijkstraMinPriorityQueue(Node originNode, ShortestPathWorkspace workspace) {
+		dijkstra(originNode, workspace, false);
+	}
 
-		initializeDijkstraMinPriorityQueue(Q, Qbuddy, destinations, originNodeID, originNode);
+	/**
+	 * Targeted variant of {@link Network#dijkstraMinPriorityQueue(Node)},
+	 * in the default workspace of the network.
+	 * 
+	 * @param originNode the node from which to find the shortest path to
+	 * the destinations with demand from it
+	 * @see Network#dijkstraToDestinations(Node, ShortestPathWorkspace)
+	 */
+	public void dijkstraToDestinations(Node originNode) {
+		dijkstraToDestinations(originNode, getDefaultWorkspace());
+	}
 
-		while (!destinations.isEmpty()) {
-			//This is the neat thing about the priority queue. "polling" takes out the minimum element (the one with lowest distance) 
-			Node u = Q.poll();
-			destinations.remove(u.getId());
-			u.dijkstraVisitied = true;
+	/**
+	 * Targeted variant of 
+	 * {@link Network#dijkstraMinPriorityQueue(Node, ShortestPathWorkspace)}, 
+	 * which stops as soon as every destination with demand from 
+	 * {@code originNode} has been settled. The labels of those destinations,
+	 * and of the nodes on their shortest paths, are final; the labels of 
+	 * other nodes may not be. This is what column generation and 
+	 * all-or-nothing assignment need, and on networks where each origin has
+	 * demand to only some of the nodes, it saves settling the rest.
+	 * 
+	 * @param originNode the node from which to find the shortest path to
+	 * the destinations with demand from it
+	 * @param workspace the workspace to hold the labels of the search
+	 */
+	public void dijkstraToDestinations(Node originNode, ShortestPathWorkspace workspace) {
+		dijkstra(originNode, workspace, true);
+	}
 
-			for (int vID: u.getNeighbours()) {
-				Node v = this.getNode(vID);
-				if (v.dijkstraVisitied) {
+	/**
+	 * Dijkstra's algorithm on the reverse network, finding the shortest
+	 * path from every node to {@code destinationNode}. Afterwards 
+	 * {@code workspace.dist[v]} is the distance from node {@code v} to the
+	 * destination, and {@code workspace.predEdge[v]} the first edge of
+	 * that path; {@link ShortestPathWorkspace#getOrigin()} is the 
+	 * destination.
+	 * 
+	 * @param destinationNode the node to which to find the shortest path
+	 * from all other nodes
+	 * @param workspace the workspace to hold the labels of the search
+	 */
+	public void dijkstraToDestination(Node destinationNode, ShortestPathWorkspace workspace) {
+		int destinationIndex = destinationNode.getIndex();
+		workspace.reset(destinationIndex);
+		final double[] dist = workspace.dist;
+		final int[] pred = workspace.pred;
+		final int[] predEdge = workspace.predEdge;
+		final boolean[] visited = workspace.visited;
+		final IndexedMinHeap Q = workspace.heap;
+		Q.insert(destinationIndex, 0);
+
+		final int[] inOffsets = topology.inOffsets;
+		final int[] inTails = topology.inTails;
+		final int[] inEdges = topology.inEdges;
+		final double[] genCost = edgeStore.genCost;
+		while (!Q.isEmpty()) {
+			int v = Q.poll();
+			visited[v] = true;
+			double vDist = dist[v];
+			for (int a = inOffsets[v]; a < inOffsets[v + 1]; a++) {
+				int u = inTails[a];
+				if (visited[u]) {
 					continue;
 				}
-				if (!Qbuddy.contains(vID)) {
-					Qbuddy.add(vID);
-					Q.add(v);
+				double alt = genCost[inEdges[a]] + vDist; 
+				if (alt < dist[u]) {
+					dist[u] = alt;
+					pred[u] = v;
+					predEdge[u] = inEdges[a];
+					Q.insertOrDecreaseKey(u, alt);
+				}
+			}
+		}
+	}
+
+	private void dijkstra(Node originNode, ShortestPathWorkspace workspace, boolean toDestinationsOnly) {
+		int originIndex = originNode.getIndex();
+		if (shortestPathEngine == ShortestPathEngine.CCH) {
+			getContractionHierarchy().oneToAll(originIndex, workspace);
+			return;
+		}
+		workspace.reset(originIndex);
+		final double[] dist = workspace.dist;
+		final int[] pred = workspace.pred;
+		final int[] predEdge = workspace.predEdge;
+		final boolean[] visited = workspace.visited;
+		final int[] destinationMarks = workspace.destinationMarks;
+
+		// Mark the destinations of the origin that are yet to be settled
+		int remainingDestinations = -1;
+		int destinationMark = 0;
+		if (toDestinationsOnly) {
+			destinationMark = ++workspace.destinationMark;
+			remainingDestinations = 0;
+			int origin = ods.getOriginIndex(originNode.getId());
+			if (origin >= 0) {
+				for (int i = ods.getOriginStart(origin); i < ods.getOriginEnd(origin); i++) {
+					int d = getNode(ods.get(i).D).getIndex();
+					if (destinationMarks[d] != destinationMark) {
+						destinationMarks[d] = destinationMark;
+						remainingDestinations++;
+					}
+				}
+			}
+		}
+		if (shortestPathEngine == ShortestPathEngine.DIAL) {
+			dial(originIndex, workspace, remainingDestinations, destinationMark);
+			return;
+		}
+		final IndexedMinHeap Q = workspace.heap;
+		Q.insert(originIndex, 0);
+
+		final int[] offsets = topology.offsets;
+		final int[] heads = topology.heads;
+		final int[] edges = topology.edges;
+		final double[] genCost = edgeStore.genCost;
+		while (!Q.isEmpty() && remainingDestinations != 0) {
+			int u = Q.poll();
+			visited[u] = true;
+			if (toDestinationsOnly && destinationMarks[u] == destinationMark) {
+				remainingDestinations--;
+			}
+			double uDist = dist[u];
+			for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+				int v = heads[a];
+				if (visited[v]) {
+					continue;
 				}
-				double alt = u.dijkstraDist + this.getEdge(u,v).getGenCost(); 
-				if (alt < v.dijkstraDist) {
-					v.dijkstraDist = alt;
-					v.dijkstraPrev = u;
-					//	Q.remove(v);
-					//	Q.add(v);
-					//Updating in the priority queue and sifting up is now efficiently (O(log(n))) 
-					//implemented in {@code MyMinPriorityQueue} with a hashmap by @author mesch
-					Q.updateHeapPositionUp(v);
+				double alt = uDist + genCost[edges[a]]; 
+				if (alt < dist[v]) {
+					dist[v] = alt;
+					pred[v] = u;
+					predEdge[v] = edges[a];
+					Q.insertOrDecreaseKey(v, alt);
 				}
 			}
 		}
+	}
 
-		return true;
+	/**
+	 * The main loop of Dijkstra's algorithm with 
+	 * {@link ShortestPathEngine#DIAL}. All nodes of the current bucket are
+	 * scanned, and scanned again if improved, until the bucket is empty; 
+	 * none of them can then be improved, so they are settled together.
+	 * 
+	 * @param originIndex the dense index of the origin
+	 * @param workspace the workspace, reset for the origin
+	 * @param remainingDestinations the number of marked destinations to
+	 * settle before stopping, or -1 to settle all nodes
+	 * @param destinationMark the mark of the destinations
+	 */
+	private void dial(int originIndex, ShortestPathWorkspace workspace, int remainingDestinations, int destinationMark) {
+		final double[] dist = workspace.dist;
+		final int[] pred = workspace.pred;
+		final int[] predEdge = workspace.predEdge;
+		final boolean[] visited = workspace.visited;
+		final int[] destinationMarks = workspace.destinationMarks;
+		workspace.ensureBuckets();
+		final BucketQueue Q = workspace.buckets;
+		final int[] bucketNodes = workspace.bucketNodes;
+		final int[] bucketMarks = workspace.bucketMarks;
+		Q.reset(dialResolution, getMaxEdgeCost(workspace));
+		Q.insertOrMove(originIndex, 0);
+
+		final int[] offsets = topology.offsets;
+		final int[] heads = topology.heads;
+		final int[] edges = topology.edges;
+		final double[] genCost = edgeStore.genCost;
+		while (!Q.isEmpty() && remainingDestinations != 0) {
+			Q.nextBucket();
+			int bucketMark = ++workspace.bucketMark;
+			int numBucketNodes = 0;
+			for (int u = Q.pollCurrentBucket(); u >= 0; u = Q.pollCurrentBucket()) {
+				if (bucketMarks[u] != bucketMark) {
+					bucketMarks[u] = bucketMark;
+					bucketNodes[numBucketNodes++] = u;
+				}
+				double uDist = dist[u];
+				for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+					int v = heads[a];
+					if (visited[v]) {
+						continue;
+					}
+					double alt = uDist + genCost[edges[a]]; 
+					if (alt < dist[v]) {
+						dist[v] = alt;
+						pred[v] = u;
+						predEdge[v] = edges[a];
+						Q.insertOrMove(v, alt);
+					}
+				}
+			}
+			for (int i = 0; i < numBucketNodes; i++) {
+				int u = bucketNodes[i];
+				visited[u] = true;
+				if (remainingDestinations > 0 && destinationMarks[u] == destinationMark) {
+					remainingDestinations--;
+				}
+			}
+		}
 	}
 
-	public void dijkstraMinPriorityQueueWithStorage(Node originNode) {
-		dijkstraMinPriorityQueue(originNode);
-		int id = originNode.getId();
-		dijkstraPrevs.put(id,new HashMap<Integer,Integer>());
-		dijkstraDists.put(id,new HashMap<Integer,Double>());
-		for(Node v : nodes.values()){
-			dijkstraPrevs.get(id).put(v.getId(), v.dijkstraPrev.getId());
-			dijkstraDists.get(id).put(v.getId(), v.dijkstraDist);
+	/**
+	 * @param workspace the workspace that caches the result
+	 * @return the largest finite generalized cost of any edge
+	 */
+	private double getMaxEdgeCost(ShortestPathWorkspace workspace) {
+		long version = edgeStore.getCostVersion();
+		if (workspace.maxEdgeCostVersion != version) {
+			double max = 0;
+			final double[] genCost = edgeStore.genCost;
+			for (int e = 0; e < edgeStore.size(); e++) {
+				if (genCost[e] > max && genCost[e] < Double.POSITIVE_INFINITY) {
+					max = genCost[e];
+				}
+			}
+			workspace.maxEdgeCost = max;
+			workspace.maxEdgeCostVersion = version;
 		}
+		return workspace.maxEdgeCost;
+	}
+
+	/**
+	 * Lets column generation keep the shortest path tree of every origin
+	 * from one call to the next and repair it where edge costs have 
+	 * changed, instead of searching from scratch. This needs memory for a
+	 * distance and an edge index per node and origin.
+	 * 
+	 * @param incrementalShortestPaths true to repair the trees, false (the
+	 * default) to search from scratch
+	 * @see Network#setShortestPathRepairTolerance(double)
+	 */
+	public void setIncrementalShortestPaths(boolean incrementalShortestPaths) {
+		this.incrementalShortestPaths = incrementalShortestPaths;
+		if (!incrementalShortestPaths) {
+			shortestPathTrees = null;
+		}
+	}
+
+	public boolean isIncrementalShortestPaths() {
+		return incrementalShortestPaths;
+	}
+
+	/**
+	 * Sets the relative change of the generalized cost of an edge below 
+	 * which the repaired shortest path trees ignore the change. With a
+	 * positive tolerance, column generation may add a path that is up to
+	 * this fraction more expensive than the shortest path, in exchange for
+	 * repairing fewer trees.
+	 * 
+	 * @param tolerance the tolerance, 0 by default, so that the trees 
+	 * are exact
+	 * @see Network#setIncrementalShortestPaths(boolean)
+	 */
+	public void setShortestPathRepairTolerance(double tolerance) {
+		if (!(tolerance >= 0) || Double.isInfinite(tolerance)) {
+			throw new IllegalArgumentException("The tolerance must be non-negative and finite, but was " + tolerance + ".");
+		}
+		this.shortestPathRepairTolerance = tolerance;
+	}
+
+	public double getShortestPathRepairTolerance() {
+		return shortestPathRepairTolerance;
+	}
+
+	/**
+	 * Selects the priority queue of the one-to-all shortest path searches.
+	 * 
+	 * @param shortestPathEngine the engine, {@code HEAP} by default
+	 * @see Network#setDialResolution(double)
+	 */
+	public void setShortestPathEngine(ShortestPathEngine shortestPathEngine) {
+		if (shortestPathEngine == null) {
+			throw new IllegalArgumentException("The shortest path engine must not be null.");
+		}
+		this.shortestPathEngine = shortestPathEngine;
+	}
+
+	public ShortestPathEngine getShortestPathEngine() {
+		return shortestPathEngine;
+	}
+
+	/**
+	 * Sets the width of the buckets of {@link ShortestPathEngine#DIAL}, in 
+	 * units of generalized cost. The distances found do not depend on it,
+	 * but the search is fastest when it is close to the smallest edge cost;
+	 * a much smaller resolution leaves most buckets empty.
+	 * 
+	 * @param dialResolution the bucket width, which must be positive
+	 */
+	public void setDialResolution(double dialResolution) {
+		if (!(dialResolution > 0) || Double.isInfinite(dialResolution)) {
+			throw new IllegalArgumentException("The resolution must be positive and finite, but was " + dialResolution + ".");
+		}
+		this.dialResolution = dialResolution;
+	}
+
+	public double getDialResolution() {
+		return dialResolution;
+	}
+
+	/**
+	 * Returns the contraction hierarchy of this network, customized for
+	 * the current edge costs. The hierarchy is built on the first call, 
+	 * which orders and contracts all nodes, and customized again whenever
+	 * the costs have changed since the last call; with a parallelism above
+	 * 1, the customization runs in the pool of the parallel searches.
+	 * 
+	 * @return the contraction hierarchy
+	 * @see ShortestPathEngine#CCH
+	 */
+	public ContractionHierarchy getContractionHierarchy() {
+		// The hierarchy is read before its version, which is reset before a new hierarchy is published
+		ContractionHierarchy hierarchy = contractionHierarchy;
+		if (hierarchy != null && hierarchyCostVersion == edgeStore.getCostVersion()) {
+			return hierarchy;
+		}
+		return customizeContractionHierarchy();
+	}
+
+	private synchronized ContractionHierarchy customizeContractionHierarchy() {
+		if (contractionHierarchy == null) {
+			hierarchyCostVersion = -1;
+			contractionHierarchy = new ContractionHierarchy(topology);
+		}
+		long version = edgeStore.getCostVersion();
+		if (hierarchyCostVersion != version) {
+			contractionHierarchy.customize(edgeStore.genCost, parallelism > 1 ? getPool() : null);
+			hierarchyCostVersion = version;
+		}
+		return contractionHierarchy;
+	}
+
+	/**
+	 * Sets the number of landmarks of {@link ShortestPathEngine#ALT}. More
+	 * landmarks give tighter bounds, so that each search settles fewer 
+	 * nodes, but cost two distances per node each, and a little time for
+	 * every node the search reaches.
+	 * 
+	 * @param numLandmarks the number of landmarks, 8 by default
+	 */
+	public void setNumLandmarks(int numLandmarks) {
+		if (numLandmarks < 1) {
+			throw new IllegalArgumentException("The number of landmarks must be at least 1, but was " + numLandmarks + ".");
+		}
+		if (numLandmarks != this.numLandmarks) {
+			landmarks = null;
+		}
+		this.numLandmarks = numLandmarks;
+	}
+
+	public int getNumLandmarks() {
+		return numLandmarks;
+	}
+
+	/**
+	 * Returns the landmarks of the A* searches, valid for the current edge
+	 * costs. The landmark distances are computed on the first call, under
+	 * the free-flow generalized cost {@code betaTime * freeFlowTime + 
+	 * betaLength * length} of each edge, or its current cost if that is
+	 * lower. Since the BPR function never falls below the free-flow time,
+	 * they stay lower bounds as the flows change; should some edge cost
+	 * less than its bound after all, the landmarks are computed again.
+	 * 
+	 * @return the landmarks
+	 */
+	private Landmarks getLandmarks() {
+		Landmarks current = landmarks;
+		if (current != null && landmarksCostVersion == edgeStore.getCostVersion()) {
+			return current;
+		}
+		return validateLandmarks();
+	}
+
+	private synchronized Landmarks validateLandmarks() {
+		long version = edgeStore.getCostVersion();
+		if (landmarks != null && landmarksCostVersion != version && !landmarks.isValidFor(edgeStore.genCost)) {
+			landmarks = null;
+		}
+		if (landmarks == null) {
+			int numEdges = edgeStore.size();
+			double[] lowerCosts = new double[numEdges];
+			for (int e = 0; e < numEdges; e++) {
+				double freeFlowCost = RUM.betaTime * edgeStore.freeFlowTime[e] + RUM.betaLength * edgeStore.length[e];
+				lowerCosts[e] = Math.min(freeFlowCost, edgeStore.genCost[e]);
+			}
+			landmarks = new Landmarks(topology, lowerCosts, numLandmarks);
+		}
+		landmarksCostVersion = version;
+		return landmarks;
+	}
+
+	/**
+	 * A* search for the shortest path of an OD, guided by the landmarks.
+	 * 
+	 * @param od the OD
+	 * @param landmarks the landmarks, valid for the current edge costs
+	 * @param workspace the workspace whose {@code pathEdges} receive the
+	 * edges of the path
+	 * @return the number of edges in the shortest path, or -1 if there is
+	 * none
+	 */
+	private int aStar(OD od, Landmarks landmarks, ShortestPathWorkspace workspace) {
+		int origin = getNode(od.O).getIndex();
+		int destination = getNode(od.D).getIndex();
+		int numEdgesInPath = landmarks.query(origin, destination, edgeStore.genCost, workspace);
+		numAStarQueries.incrementAndGet();
+		numAStarSettledNodes.addAndGet(workspace.settledNodes);
+		return numEdgesInPath;
+	}
+
+	/**
+	 * @return the number of A* searches of {@link ShortestPathEngine#ALT}
+	 * since the statistics were last reset
+	 * @see Network#resetAStarStatistics()
+	 */
+	public long getNumAStarQueries() {
+		return numAStarQueries.get();
+	}
+
+	/**
+	 * @return the total number of nodes settled by the A* searches since
+	 * the statistics were last reset; divided by 
+	 * {@link Network#getNumAStarQueries()}, the nodes settled per search
+	 */
+	public long getNumAStarSettledNodes() {
+		return numAStarSettledNodes.get();
+	}
+
+	public void resetAStarStatistics() {
+		numAStarQueries.set(0);
+		numAStarSettledNodes.set(0);
+	}
+
+	/**
+	 * Finds the shortest path of an OD with a point-to-point search: with
+	 * {@link ShortestPathEngine#CCH}, a query in the contraction hierarchy,
+	 * which visits only the ancestors of the origin and destination in its
+	 * elimination tree, and otherwise an A* search guided by landmarks, as
+	 * with {@link ShortestPathEngine#ALT}. When shortest paths are unique,
+	 * the path is the one that 
+	 * {@link Network#shortestPath(OD, ShortestPathWorkspace)} finds after
+	 * a one-to-all search.
+	 * 
+	 * @param od the OD
+	 * @param workspace the workspace of the calling thread
+	 * @return the shortest path from {@code od.O} to {@code od.D}, or null
+	 * if there is none
+	 * @see Network#getContractionHierarchy()
+	 */
+	public Path shortestPathQuery(OD od, ShortestPathWorkspace workspace) {
+		int numEdgesInPath;
+		if (shortestPathEngine == ShortestPathEngine.CCH) {
+			int origin = getNode(od.O).getIndex();
+			int destination = getNode(od.D).getIndex();
+			numEdgesInPath = getContractionHierarchy().query(origin, destination, workspace);
+		} else {
+			numEdgesInPath = aStar(od, getLandmarks(), workspace);
+		}
+		return toPath(od, numEdgesInPath, workspace);
+	}
+
+	/**
+	 * @return the path of the first {@code numEdgesInPath} edges in 
+	 * {@code workspace.pathEdges}, or null if {@code numEdgesInPath} is -1
+	 */
+	private Path toPath(OD od, int numEdgesInPath, ShortestPathWorkspace workspace) {
+		if (numEdgesInPath < 0) {
+			return null;
+		}
+		return new Path(Arrays.copyOf(workspace.pathEdges, numEdgesInPath), edgeStore, od);
+	}
+
+	/**
+	 * Creates a workspace for shortest path searches on this network. Each
+	 * thread that runs searches concurrently needs its own workspace.
+	 * 
+	 * @return a new workspace sized to the network
+	 */
+	public ShortestPathWorkspace createShortestPathWorkspace() {
+		return new ShortestPathWorkspace(getNumNodes());
+	}
+
+	private ShortestPathWorkspace getDefaultWorkspace() {
+		if (defaultWorkspace == null) {
+			defaultWorkspace = createShortestPathWorkspace();
+		}
+		return defaultWorkspace;
 	}
 
 	/**
@@ -504,7 +1347,7 @@ public class Network {
 		// Calculate maximum coordinates
 		double maxX = 0;
 		double maxY = 0;
-		for (Node node: nodes.values()) {
+		for (Node node: nodeArray) {
 			maxX = Math.max(maxX, node.getX());
 			maxY = Math.max(maxY, node.getY());
 		}
@@ -517,7 +1360,7 @@ public class Network {
 		double circleRadius = L / 100;
 
 		// Draw nodes
-		for (Node node: nodes.values()) {
+		for (Node node: nodeArray) {
 			StdDraw.circle(node.getX(), node.getY(), circleRadius);
 			StdDraw.text(node.getX(), node.getY(), node.getId() + "");
 		}
@@ -525,7 +1368,8 @@ public class Network {
 		Node fromNode;
 		Node toNode;
 		// Draw edges
-		for (Edge edge : edges.values()) {
+		for (int i = 0; i < numEdges; i++) {
+			Edge edge = edgeArray[i];
 			fromNode = this.getNode(edge.getTail());
 			toNode = this.getNode(edge.getHead());
 			drawEdge(fromNode, toNode, circleRadius, type);
@@ -629,9 +1473,9 @@ public class Network {
 		// line thickness)
 		Node from;
 		Node to;
-		for (int i = 0; i < path.edges.size(); i++) {
-			from = this.getNode(path.edges.get(i).getTail());
-			to = this.getNode(path.edges.get(i).getHead());
+		for (int e: path.getEdgeIndices()) {
+			from = this.getNode(edgeStore.tail[e]);
+			to = this.getNode(edgeStore.head[e]);
 			drawEdge(from, to, circleRadius, type);
 		}
 		StdDraw.setPenColor(StdDraw.BLACK);
@@ -643,72 +1487,141 @@ public class Network {
 	}
 
 
+	/**
+	 * Deletes the file of a distance matrix that is being replaced, so 
+	 * that repeated generations do not fill the local storage directory.
+	 */
+	private static void disposeDistanceMatrix(DistanceMatrix matrix) {
+		if (matrix != null) {
+			matrix.dispose();
+		}
+	}
+
 	/** 
 	 * Generates the shortest path tree for every
 	 * node of the network. In each of these cases
 	 * the distance to all other nodes is stored in
-	 * dijkstraDists
-	 */
-	public void generateAllShortestPathTrees(){
-		for (Node origin : nodes.values()){
-			dijkstraMinPriorityQueueWithStorage(origin);
+	 * a {@link DistanceMatrix}, which is kept in a
+	 * memory-mapped file in the local storage directory 
+	 * if it exceeds the heap budget.
+	 * @throws IOException if the memory-mapped file cannot be created
+	 * @see Network#setDistanceMatrixHeapBudget(long)
+	 */
+	public void generateAllShortestPathTrees() throws IOException {
+		File spillDirectory = localStorageDirectory == null ? null : new File(localStorageDirectory);
+		disposeDistanceMatrix(allPairsDistances);
+		allPairsDistances = DistanceMatrix.create(getNumNodes(), getNumNodes(), distanceMatrixHeapBudget, spillDirectory);
+		ShortestPathWorkspace workspace = getDefaultWorkspace();
+		for (Node origin : nodeArray){
+			dijkstraMinPriorityQueue(origin, workspace);
+			allPairsDistances.setRow(origin.getIndex(), workspace.dist);
+		}
+	}
+
+	/**
+	 * Generates a shortest path tree on the reverse network for every node
+	 * with demand to it, holding the shortest path distance from every node
+	 * to that destination. This is what the global cost bound of the
+	 * choice set enumeration needs, at a fraction of the time and memory
+	 * of {@link Network#generateAllShortestPathTrees()} when only some
+	 * nodes are destinations.
+	 * @throws IOException if the memory-mapped file cannot be created
+	 * @see Network#dijkstraToDestination(Node, ShortestPathWorkspace)
+	 */
+	public void generateDestinationTrees() throws IOException {
+		int numNodes = getNumNodes();
+		destinationRows = new int[numNodes];
+		Arrays.fill(destinationRows, -1);
+		int numDestinations = 0;
+		for (Node node: nodeArray) {
+			if (node.hasDemandTo()) {
+				destinationRows[node.getIndex()] = numDestinations++;
+			}
+		}
+		File spillDirectory = localStorageDirectory == null ? null : new File(localStorageDirectory);
+		disposeDistanceMatrix(distancesToDestinations);
+		distancesToDestinations = DistanceMatrix.create(numDestinations, numNodes, distanceMatrixHeapBudget, spillDirectory);
+		ShortestPathWorkspace workspace = getDefaultWorkspace();
+		for (Node destination: nodeArray) {
+			if (destinationRows[destination.getIndex()] >= 0) {
+				dijkstraToDestination(destination, workspace);
+				distancesToDestinations.setRow(destinationRows[destination.getIndex()], workspace.dist);
+			}
 		}
 	}
 
+	/**
+	 * The shortest path distance from a node to a destination, as found
+	 * by {@link Network#generateDestinationTrees()}.
+	 * 
+	 * @param from the dense index of a node
+	 * @param destination the dense index of a node with demand to it
+	 * @return the shortest path distance from {@code from} to 
+	 * {@code destination}
+	 */
+	public double distanceToDestination(int from, int destination) {
+		return distancesToDestinations.get(destinationRows[destination], from);
+	}
 
-	/** 
-	 * Fills out the intial restricted choice sets
-	 * by calling the recursive function {@code minos} for all 
-	 * OD relations. A locally and globally constrained path
-	 * enumeration is used to produce the choice sets.
-	 * @throws IOException 
+	/**
+	 * @return the shortest path distances between all pairs of nodes from
+	 * the last call of {@link Network#generateAllShortestPathTrees()}, or
+	 * null
 	 */
-	public void generateUniversalChoiceSets() throws IOException {
-		if (isUniversalChoiceSetsGenerated) return;
-		System.out.println("Generating initial restricted choice set...");
-		int u;
-		int[] currentPath;
-		double lengthOfCurrentPath;
-		boolean[] unvisited;
-		int numNodes = getNumNodes();
-		generateAllShortestPathTrees();
-		long start = System.currentTimeMillis();
-		long tempTimer = System.currentTimeMillis();
-		for (HashMap<Integer, OD> m: ods.values()) {
-			OCounter++;
-			System.out.println("Origin #" + OCounter + " of " + ods.size() + " is being processed.");
-			int DCounter = 0;
-			for (OD od: m.values()) { // For each OD-pair; "minos" works on the OD-level
-				DCounter++;
-				double maximumToleratedPathCostFromOtoD = dijkstraDists.get(od.O).get(od.D) * maximumCostRatio;
-				if(printStatusOnTheGo){
-					System.out.print("     Destination #" + DCounter + " of " + m.size() + " is being processed.");
-					System.out.print(" Maximum cost is " + maximumToleratedPathCostFromOtoD + ".");
-				}
-				od.R = new ArrayList<Path>();
-				currentPath = new int[1];
-				u = od.O; // Recursion starts in the origin node
-				currentPath[0] = u;
-				lengthOfCurrentPath = 0;
+	public DistanceMatrix getAllPairsDistances() {
+		return allPairsDistances;
+	}
 
-				unvisited = new boolean[numNodes];
-				Arrays.fill(unvisited, true);
-				unvisited[u - 1] = false; // Origin node starts out as visited
+	/**
+	 * Selects the algorithm that generates the universal choice set of each
+	 * OD in {@link Network#generateUniversalChoiceSets()} and 
+	 * {@link Network#consEnum(double)}.
+	 * 
+	 * @param choiceSetGenerator the generator, by default an
+	 * {@link ExhaustiveChoiceSetGenerator}
+	 * @see KShortestPathsChoiceSetGenerator
+	 */
+	public void setChoiceSetGenerator(ChoiceSetGenerator choiceSetGenerator) {
+		if (choiceSetGenerator == null) {
+			throw new IllegalArgumentException("The choice set generator must not be null.");
+		}
+		this.choiceSetGenerator = choiceSetGenerator;
+	}
 
-				minos(od, u, currentPath, lengthOfCurrentPath, unvisited, maximumToleratedPathCostFromOtoD);
+	public ChoiceSetGenerator getChoiceSetGenerator() {
+		return choiceSetGenerator;
+	}
 
-				if(useLocalStorage){
-					transferUniversalChoiceSetToStorage(od);
-					od.R.clear();
-				}
-				if(printStatusOnTheGo){
-					System.out.print(" Total n.o. paths: " + totalNumberOfPaths);
-					System.out.print(" Total n.o. nodes in paths: " + totalNumberOfNodesInPaths + ". Calculation time OD: " + (System.currentTimeMillis() - tempTimer)/1000d);
-					System.out.println(". Free memory (mb): " + Runtime.getRuntime().freeMemory()/1048576  + "."); 
-				}
-				tempTimer = System.currentTimeMillis();
-			}
+	/**
+	 * Sets the largest number of bytes that the all-pairs distance matrix
+	 * may take on the heap; a larger matrix is kept in a memory-mapped file.
+	 * 
+	 * @param bytes the heap budget, 256 MB by default
+	 */
+	public void setDistanceMatrixHeapBudget(long bytes) {
+		this.distanceMatrixHeapBudget = bytes;
+	}
+
+
+	/** 
+	 * Fills out the intial restricted choice sets
+	 * by calling the recursive function {@code minos} for all 
+	 * OD relations. A locally and globally constrained path
+	 * enumeration is used to produce the choice sets.
+	 * @throws IOException 
+	 */
+	public void generateUniversalChoiceSets() throws IOException {
+		if (isUniversalChoiceSetsGenerated) return;
+		System.out.println("Generating initial restricted choice set...");
+		generateDestinationTrees();
+		if (isLocalConstraintEnabled()) {
+			generateAllShortestPathTrees();
+		} else {
+			disposeDistanceMatrix(allPairsDistances);
+			allPairsDistances = null;
 		}
+		long start = System.currentTimeMillis();
+		generateChoiceSets(maximumCostRatio, 0, false);
 		//		updateUniversalDeltas(); // Updates "deltaUniversal" for use in Pathsize
 		// Factor calculation
 		System.out.println((System.currentTimeMillis() - start)/1000d);
@@ -718,166 +1631,385 @@ public class Network {
 
 	public void consEnum(double bound) throws IOException {
 		System.out.println("Generating constrained Enumeration Choice Set...");
-		int u;
-		int[] currentPath;
-		double lengthOfCurrentPath;
-		boolean[] unvisited;
-		int numNodes = getNumNodes();
-		generateAllShortestPathTrees();
+		generateDestinationTrees();
+		if (isLocalConstraintEnabled()) {
+			generateAllShortestPathTrees();
+		} else {
+			disposeDistanceMatrix(allPairsDistances);
+			allPairsDistances = null;
+		}
 		long start = System.currentTimeMillis();
+		generateChoiceSets(1, bound, true);
+		//		updateUniversalDeltas(); // Updates "deltaUniversal" for use in Pathsize
+		// Factor calculation
+		System.out.println((System.currentTimeMillis() - start)/1000d);
+		System.out.println("Universal choice set successfully generated.");
+		isUniversalChoiceSetsGenerated = true;
+	}
+
+	/**
+	 * Generates the universal choice set of every OD with the 
+	 * {@link ChoiceSetGenerator}, bounding the cost of the paths of each
+	 * OD by {@code ratio} times the cost of its shortest path plus 
+	 * {@code bound}. With a parallelism above 1, each origin is a task in
+	 * the fork-join pool of the network, so that threads that finish their
+	 * origins early steal the remaining ones, and the search of each OD is
+	 * split further by the arcs out of the origin; the ODs take very 
+	 * different times, the long-distance ones the longest. The ODs of an
+	 * origin are generated in the same order as sequentially and share one
+	 * trie, so the choice sets, and the memory they take, are the same
+	 * whatever the number of threads.
+	 * 
+	 * @param ratio the maximum cost ratio
+	 * @param bound the additional cost bound
+	 * @param copyODs true to generate the choice sets of copies of the
+	 * ODs, leaving the ODs themselves untouched
+	 */
+	private void generateChoiceSets(double ratio, double bound, boolean copyODs) throws IOException {
+		if (useLocalStorage) {
+			if (universalStore != null) {
+				universalStore.close();
+			}
+			universalStore = ChoiceSetStore.create(localStorageDirectory, UNIVERSAL_STORE_NAME, this);
+			getChoiceSetManager().clear();
+		}
+		if (parallelism > 1 && ods.size() > 1) {
+			try {
+				getPool().invoke(new ChoiceSetTask(0, ods.getNumOrigins(), ratio, bound, copyODs));
+			} catch (PathSinkException e) {
+				throw e.getCause();
+			}
+		} else {
+			generateChoiceSetsSequentially(ratio, bound, copyODs);
+		}
+		if (useLocalStorage) {
+			universalStore.flush();
+		}
+	}
+
+	private void generateChoiceSetsSequentially(double ratio, double bound, boolean copyODs) throws IOException {
 		long tempTimer = System.currentTimeMillis();
-		for (HashMap<Integer, OD> m: ods.values()) {
+		for (int origin = 0; origin < ods.getNumOrigins(); origin++) {
 			OCounter++;
-			//System.out.println("Origin #" + OCounter + " of " + ods.size() + " is being processed.");
+			if (!copyODs) System.out.println("Origin #" + OCounter + " of " + ods.getNumOrigins() + " is being processed.");
 			int DCounter = 0;
-			for (OD odReal: m.values()) { // For each OD-pair; "minos" works on the OD-level
-				OD od = new OD(odReal.O,odReal.D,odReal.demand);
+			// The ODs of an origin share a trie, and thereby the prefixes of their paths
+			PathTrie trie = new PathTrie(edgeStore);
+			for (int i = ods.getOriginStart(origin); i < ods.getOriginEnd(origin); i++) { // For each OD-pair; the generator works on the OD-level
 				DCounter++;
-				double maximumToleratedPathCostFromOtoD = dijkstraDists.get(od.O).get(od.D) + bound;
 				if(printStatusOnTheGo){
-					System.out.print("     Destination #" + DCounter + " of " + m.size() + " is being processed.");
-					System.out.print(" Maximum cost is " + maximumToleratedPathCostFromOtoD + ".");
-				}
-				od.R = new ArrayList<Path>();
-				currentPath = new int[1];
-				u = od.O; // Recursion starts in the origin node
-				currentPath[0] = u;
-				lengthOfCurrentPath = 0;
-
-				unvisited = new boolean[numNodes];
-				Arrays.fill(unvisited, true);
-				unvisited[u - 1] = false; // Origin node starts out as visited
-
-				minos(od, u, currentPath, lengthOfCurrentPath, unvisited, maximumToleratedPathCostFromOtoD);
-
-				if(useLocalStorage){
-					transferUniversalChoiceSetToStorage(od);
-					od.R.clear();
+					System.out.print("     Destination #" + DCounter + " of " + (ods.getOriginEnd(origin) - ods.getOriginStart(origin)) + " is being processed.");
 				}
+				generateChoiceSet(i, ratio, bound, copyODs, trie);
 				if(printStatusOnTheGo){
-					System.out.print(" Total n.o. paths: " + totalNumberOfPaths);
-					System.out.print(" Total n.o. nodes in paths: " + totalNumberOfNodesInPaths + ". Calculation time OD: " + (System.currentTimeMillis() - tempTimer)/1000d);
+					System.out.print(" Total n.o. paths: " + getTotalNumberOfPaths());
+					System.out.print(" Total n.o. nodes in paths: " + getTotalNumberOfNodesInPaths() + ". Calculation time OD: " + (System.currentTimeMillis() - tempTimer)/1000d);
 					System.out.println(". Free memory (mb): " + Runtime.getRuntime().freeMemory()/1048576  + "."); 
 				}
 				tempTimer = System.currentTimeMillis();
 			}
 		}
-		//		updateUniversalDeltas(); // Updates "deltaUniversal" for use in Pathsize
-		// Factor calculation
-		System.out.println((System.currentTimeMillis() - start)/1000d);
-		System.out.println("Universal choice set successfully generated.");
-		isUniversalChoiceSetsGenerated = true;
 	}
+
 	/**
-	 * Transfers the restricted choice set to the local
-	 * storage directory. This is done to reduce the
-	 * requirements of available memory.
+	 * Generates the universal choice set of one OD, into {@code od.R} or,
+	 * if the local storage is used, straight into its file.
+	 * 
+	 * @param i the index of the OD in {@link Network#ods}
+	 * @param trie the trie to store the paths in if they are kept in memory
+	 * @see Network#generateChoiceSets(double, double, boolean)
+	 */
+	private void generateChoiceSet(int i, double ratio, double bound, boolean copyODs, PathTrie trie) throws IOException {
+		OD od = ods.get(i);
+		if (copyODs) {
+			od = new OD(od.O, od.D, od.demand);
+		}
+		double maximumToleratedPathCostFromOtoD = distanceToDestination(getNode(od.O).getIndex(), getNode(od.D).getIndex()) * ratio + bound;
+		if(printStatusOnTheGo && parallelism == 1){
+			System.out.print(" Maximum cost is " + maximumToleratedPathCostFromOtoD + ".");
+		}
+		if (copyODs) {
+			od.R = new ArrayList<Path>();
+		} else {
+			getChoiceSetManager().reset(od);
+		}
+		PathSink sink;
+		if(useLocalStorage){
+			sink = new StoragePathSink(getUniversalStore(), od);
+		} else {
+			sink = new MemoryPathSink(trie, od.R);
+		}
+		generateChoiceSet(od, maximumToleratedPathCostFromOtoD, sink);
+	}
+
+	/**
+	 * Generates the choice set of an OD with the 
+	 * {@link ChoiceSetGenerator} of the network, handing each path to
+	 * {@code sink} as it is found. Which paths are kept, and where, is up
+	 * to the sink; to write the paths within a cost bound to a file, for 
+	 * instance, wrap a {@link StoragePathSink} in a 
+	 * {@link CostFilteredPathSink}. The shortest path trees of 
+	 * {@link Network#generateDestinationTrees()}, and of 
+	 * {@link Network#generateAllShortestPathTrees()} if the local 
+	 * constraint is enabled, must have been generated.
+	 * 
+	 * @param od the OD
+	 * @param maximumCost the largest cost of a path in the choice set
+	 * @param sink the sink of the paths, which is closed afterwards
+	 * @throws IOException if the sink cannot write the paths
 	 */
-	private void transferUniversalChoiceSetToStorage(OD od) throws IOException{
-		FileWriter writer = new FileWriter(localStorageDirectory + "PathsO" + od.O + "D" + od.D + ".csv");
-		for(int i = 0; i < od.R.size(); i++){
-			Path path = od.R.get(i);
-			writer.append(String.valueOf(path.getFlow()) + delim + String.valueOf(path.getAuxFlow()) + delim +
-					String.valueOf(path.length) + delim + String.valueOf(path.genCost) + delim +
-					String.valueOf(path.enumeratorInProbabilityExpression) + delim + String.valueOf(path.p) + delim +
-					String.valueOf(path.transformedCost) + delim + String.valueOf(path.PS) + delim +
-					String.valueOf(path.markedForRemoval) + delim);
-			if(!path.edges.isEmpty()){
-				for(int j = 0; j < path.edges.size() -1; j++){
-					writer.append( String.valueOf(path.edges.get(j).getId()) + delim);
+	public void generateChoiceSet(OD od, double maximumCost, PathSink sink) throws IOException {
+		try {
+			choiceSetGenerator.generate(this, od, maximumCost, new CountingPathSink(sink));
+		} catch (PathSinkException e) {
+			throw e.getCause();
+		} finally {
+			sink.close();
+		}
+	}
+
+	/**
+	 * Fork-join task over a range of origins, split in halves until each
+	 * task is a single origin, whose ODs share a trie.
+	 */
+	private class ChoiceSetTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+		private final double ratio;
+		private final double bound;
+		private final boolean copyODs;
+
+		ChoiceSetTask(int from, int to, double ratio, double bound, boolean copyODs) {
+			this.from = from;
+			this.to = to;
+			this.ratio = ratio;
+			this.bound = bound;
+			this.copyODs = copyODs;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ChoiceSetTask(from, mid, ratio, bound, copyODs), 
+						new ChoiceSetTask(mid, to, ratio, bound, copyODs));
+				return;
+			}
+			// The ODs of the origin share a trie, as in a sequential run
+			PathTrie trie = new PathTrie(edgeStore);
+			try {
+				for (int i = ods.getOriginStart(from); i < ods.getOriginEnd(from); i++) {
+					generateChoiceSet(i, ratio, bound, copyODs, trie);
 				}
-				writer.append(String.valueOf(path.edges.get(path.edges.size()-1).getId()) + "\n" );
+			} catch (IOException e) {
+				throw new PathSinkException(e);
 			}
 		}
+	}
+
+	/**
+	 * Enumerates the paths of an OD that start with one arc out of the
+	 * origin, into a list and a scratch trie of its own, counting them if
+	 * the sink they are meant for counts its paths. The trie of the origin
+	 * is not thread-safe, so the paths are inserted into it afterwards, by
+	 * the task of the OD.
+	 */
+	private class FirstArcTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final OD od;
+		private final double maximumToleratedPathCostFromOtoD;
+		private final int arc;
+		private final ArrayList<Path> paths = new ArrayList<Path>();
+		private final PathSink sink;
+
+		FirstArcTask(OD od, double maximumToleratedPathCostFromOtoD, int arc, boolean counted) {
+			this.od = od;
+			this.maximumToleratedPathCostFromOtoD = maximumToleratedPathCostFromOtoD;
+			this.arc = arc;
+			MemoryPathSink memory = new MemoryPathSink(new PathTrie(edgeStore), paths);
+			this.sink = counted ? new CountingPathSink(memory) : memory;
+		}
+
+		@Override
+		protected void compute() {
+			minos(od, maximumToleratedPathCostFromOtoD, arc, arc + 1, sink);
+		}
+	}
+
+	/**
+	 * Transfers the restricted choice set to the local
+	 * storage directory. This is done to reduce the
+	 * requirements of available memory.
+	 */
+	void transferUniversalChoiceSetToStorage(OD od) throws IOException{
+		getUniversalStore().write(od, od.R, true);
+	}
 
-		writer.flush();
-		writer.close();
+	/**
+	 * @return the store of the universal choice sets, opened with the 
+	 * choice sets of an earlier run if it has not been used yet
+	 */
+	synchronized ChoiceSetStore getUniversalStore() throws IOException {
+		if (universalStore == null) {
+			universalStore = ChoiceSetStore.open(localStorageDirectory, UNIVERSAL_STORE_NAME, this);
+		}
+		return universalStore;
 	}
 
+	/**
+	 * Stores the paths of each universal choice set that have been used,
+	 * with zero flow, in the local storage directory, replacing those
+	 * stored before; see {@link Network#loadConsideredPaths()}.
+	 */
 	public void exportConsideredPaths() throws IOException {
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for(OD od : m.values()) {
-				exportConsideredPaths(od);
-			}
+		if (consideredStore != null) {
+			consideredStore.close();
+		}
+		consideredStore = ChoiceSetStore.create(localStorageDirectory, CONSIDERED_STORE_NAME, this);
+		for (OD od: ods) {
+			exportConsideredPaths(od);
 		}
+		consideredStore.flush();
 	}
 	
 	private void exportConsideredPaths(OD od) throws IOException{
-		FileWriter writer = new FileWriter(localStorageDirectory + "PathsO" + od.O + "D" + od.D + "_Considered.csv");
-		for(int i = 0; i < od.R.size(); i++){
-			Path path = od.R.get(i);
+		ArrayList<Path> R = acquireUniversalChoiceSet(od);
+		ArrayList<Path> consideredPaths = new ArrayList<Path>();
+		for(int i = 0; i < R.size(); i++){
+			Path path = R.get(i);
 			if(path.getHasBeenUsed()){
-				writer.append(String.valueOf(0) + delim + String.valueOf(0) + delim +
-						String.valueOf(path.length) + delim + String.valueOf(path.genCost) + delim +
-						String.valueOf(path.enumeratorInProbabilityExpression) + delim + String.valueOf(path.p) + delim +
-						String.valueOf(path.transformedCost) + delim + String.valueOf(path.PS) + delim +
-						String.valueOf(path.markedForRemoval) + delim);
-				if(!path.edges.isEmpty()){
-					for(int j = 0; j < path.edges.size() -1; j++){
-						writer.append( String.valueOf(path.edges.get(j).getId()) + delim);
-					}
-					writer.append(String.valueOf(path.edges.get(path.edges.size()-1).getId()) + "\n" );
-				}
+				consideredPaths.add(path);
 			}
 		}
-		writer.flush();
-		writer.close();
+		getChoiceSetManager().release(od, false);
+		consideredStore.write(od, consideredPaths, false);
 	}
 
+	/**
+	 * Acquires the universal choice set of an OD: loads it from the local
+	 * storage into {@code od.R}, unless it is held in memory already, in
+	 * which case {@code od.R} is left as it is rather than added to. The 
+	 * choice set then stays in memory, outside the budget of 
+	 * {@link Network#setChoiceSetMemoryBudget(long)}, until it is released
+	 * by {@link Network#releaseUniversalChoiceSet(OD, boolean)} or the 
+	 * next sweep over all universal choice sets; a caller that loads the
+	 * choice sets of many ODs should release each when done with it.
+	 * 
+	 * @throws IOException if the choice set cannot be loaded, in which
+	 * case it is not acquired, or if a choice set evicted to keep the 
+	 * budget cannot be stored
+	 * @see ChoiceSetManager#acquire(OD)
+	 */
+	public void loadUniversalChoiceSetFromStorage(OD od) throws IOException {
+		acquireUniversalChoiceSet(od);
+	}
 
+	/**
+	 * {@link ChoiceSetManager#acquire(OD)}, throwing the 
+	 * {@link IOException} of a {@link ChoiceSetStoreException}.
+	 */
+	private ArrayList<Path> acquireUniversalChoiceSet(OD od) throws IOException {
+		try {
+			return getChoiceSetManager().acquire(od);
+		} catch (ChoiceSetStoreException e) {
+			throw e.getCause();
+		}
+	}
 
-
-
-	public void loadUniversalChoiceSetFromStorage(OD od) throws IOException {
-		loadUniversalChoiceSetFromStorage(od,localStorageDirectory + "PathsO" + od.O + "D" + od.D + ".csv");
+	/**
+	 * Releases the universal choice set of an OD acquired by 
+	 * {@link Network#loadUniversalChoiceSetFromStorage(OD)}, which may then
+	 * be stored and cleared to keep the memory budget.
+	 * 
+	 * @param od the OD
+	 * @param modified true if the choice set, or any of its paths, has
+	 * changed, so that it must be stored again
+	 * @see ChoiceSetManager#release(OD, boolean)
+	 */
+	public void releaseUniversalChoiceSet(OD od, boolean modified) {
+		getChoiceSetManager().release(od, modified);
 	}
 	
+	/**
+	 * Adds the considered paths of an OD, exported by 
+	 * {@link Network#exportConsideredPaths()}, to its universal choice set.
+	 */
 	public void loadConsideredPaths(OD od) throws IOException {
-		loadUniversalChoiceSetFromStorage(od,localStorageDirectory + "PathsO" + od.O + "D" + od.D + "_Considered.csv");
+		if (consideredStore == null) {
+			consideredStore = ChoiceSetStore.open(localStorageDirectory, CONSIDERED_STORE_NAME, this);
+		}
+		ArrayList<Path> R = acquireUniversalChoiceSet(od);
+		try {
+			consideredStore.read(od, R);
+		} finally {
+			getChoiceSetManager().release(od, true);
+		}
 	}
 	
 	public void loadConsideredPaths() throws IOException {
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for(OD od : m.values()) {
-				loadConsideredPaths(od);
-			}
+		for (OD od: ods) {
+			loadConsideredPaths(od);
 		}
 	}
 	
 	/**
-	 * Loads restricted choice sets from storage.
+	 * Loads a choice set from a text file with a line per path: its flow,
+	 * auxiliary flow, length, generalized cost, enumerator, probability,
+	 * transformed cost, path size and removal mark, followed by the ids of
+	 * its edges, all separated by {@code delim}. The paths are added to the
+	 * universal choice set of the OD.
 	 */
 	public void loadUniversalChoiceSetFromStorage(OD od, String outfile) throws IOException{
+		ArrayList<Path> R = acquireUniversalChoiceSet(od);
+		try {
+			loadChoiceSet(od, outfile, R);
+		} finally {
+			getChoiceSetManager().release(od, true);
+		}
+	}
+
+	private void loadChoiceSet(OD od, String outfile, ArrayList<Path> R) throws IOException{
 		BufferedReader br = new BufferedReader(new FileReader(outfile));
 		String readLine;
+		double[] scalars = new double[8];
+		int[] edgeIndices = new int[16];
 		while( (readLine = br.readLine()) != null){
-			Path path = new Path(new ArrayList<Edge>(), od);
+			boolean markedForRemoval = false;
+			int numEdgesInPath = 0;
 			int loadCounter = 0;
-			String tempString = "";
+			int start = 0; // The start of the current field
 			for(int i = 0; i < readLine.length(); i++){
 				char ch = readLine.charAt(i);
 				if ( ch == delim){
+					String tempString = readLine.substring(start, i);
 					loadCounter++;
-					switch(loadCounter){
-					case 1: path.setFlow(Double.valueOf(tempString)); break;
-					case 2: path.setAuxFlow(Double.valueOf(tempString)); break;
-					case 3: path.length = Double.valueOf(tempString); break;
-					case 4: path.genCost = Double.valueOf(tempString); break;
-					case 5: path.enumeratorInProbabilityExpression = Double.valueOf(tempString); break;
-					case 6: path.p = Double.valueOf(tempString); break;
-					case 7: path.transformedCost = Double.valueOf(tempString); break;
-					case 8: path.PS = Double.valueOf(tempString); break;
-					case 9: path.markedForRemoval = Boolean.valueOf(tempString); break;
-					default: path.edges.add(getEdge(Integer.valueOf(tempString))); break;
+					if (loadCounter <= 8) {
+						scalars[loadCounter-1] = Double.valueOf(tempString);
+					} else if (loadCounter == 9) {
+						markedForRemoval = Boolean.valueOf(tempString);
+					} else {
+						if (numEdgesInPath == edgeIndices.length) edgeIndices = Arrays.copyOf(edgeIndices, 2*numEdgesInPath);
+						edgeIndices[numEdgesInPath++] = getEdge(Integer.valueOf(tempString)).getIndex();
 					}
-					tempString = "";
-				} else {
-					tempString += ch;
+					start = i + 1;
 				}
 			}
-			path.edges.add(getEdge(Integer.valueOf(tempString)));
+			String tempString = readLine.substring(start);
+			if (numEdgesInPath == edgeIndices.length) edgeIndices = Arrays.copyOf(edgeIndices, 2*numEdgesInPath);
+			edgeIndices[numEdgesInPath++] = getEdge(Integer.valueOf(tempString)).getIndex();
+			Path path = new Path(Arrays.copyOf(edgeIndices, numEdgesInPath), edgeStore, od);
+			path.setFlow(scalars[0]);
+			path.setAuxFlow(scalars[1]);
+			path.length = scalars[2];
+			path.genCost = scalars[3];
+			path.enumeratorInProbabilityExpression = scalars[4];
+			path.p = scalars[5];
+			path.transformedCost = scalars[6];
+			path.PS = scalars[7];
+			path.markedForRemoval = markedForRemoval;
 			path.updateCost();
-			od.R.add(path);
+			R.add(path);
 		}
 	}
 
@@ -892,10 +2024,10 @@ public class Network {
 	 */
 	public Edge getEdge(int edgeId){
 		if(edgeId < 0){
-			Edge edge = edges.get(-edgeId);
+			Edge edge = edgeArray[edgeIndex.getIndex(-edgeId)];
 			return edgesNodePair.get(edge.getHead()).get(edge.getTail());
 		} else {
-			Edge edge = edges.get(edgeId);
+			Edge edge = edgeArray[edgeIndex.getIndex(edgeId)];
 			return edgesNodePair.get(edge.getTail()).get(edge.getHead());
 		} 		
 	}
@@ -939,30 +2071,30 @@ public class Network {
 	 * with ID {@code nodeID}. This operation is O(1).
 	 * 
 	 * @param nodeID the integer ID of the node to return
-	 * @return the node with ID {@code nodeID}
+	 * @return the node with ID {@code nodeID}, or null if 
+	 * there is no such node
 	 */
 	public Node getNode(int nodeID) {
-		return nodes.get(nodeID);
-
+		int index = nodeIndex.getIndex(nodeID);
+		return (index < 0) ? null : nodeArray[index];
 	}
 
 	/**
 	 * 
-	 * @return the number of edges in the network. 
-	 * This number is retrieved from the length
-	 * of the vector of edges.
+	 * @return the number of edges in the network, not
+	 * counting the opposite edges of a bidirectional network.
 	 */
 	public int getNumEdges() {
-		return edges.size();
+		return numEdges;
 	}
 
 	/**
 	 * 
 	 * @return The number of nodes in the network.
-	 * This is retrieved from the list of nodes.
+	 * This is retrieved from the array of nodes.
 	 */
 	public int getNumNodes() {
-		return nodes.size();
+		return nodeArray.length;
 	}
 
 	/**
@@ -975,53 +2107,15 @@ public class Network {
 	}
 
 	/**
-	 * Retrieves an OD-relation in O(1) time.
+	 * Retrieves an OD-relation in O(log n) time, where n is the
+	 * number of destinations of {@code O}.
 	 * 
 	 * @param O the integer ID of the origin node
 	 * @param D the integer ID of the destination node
-	 * @return the OD
+	 * @return the OD, or null if there is no demand from O to D
 	 */
 	public OD getOD(int O, int D) {
-		return ods.get(O).get(D);
-	}
-
-	/**
-	 * Inititialization of the Dijkstra algorithm
-	 * for improved brevity and readability. 
-	 * 
-	 * @param Q the set of visited nodes as a priority queue; the shortest
-	 * path to these nodes has been found. 
-	 * @param Qbuddy identical to Q, but as a HashMap to regularly 
-	 * check what is in the queue
-	 * @param destinations HashSet of integers corresponding to
-	 * the list of still unvisited destinations with demand
-	 * @param originNodeID integer ID of origin node
-	 * @param originNode origin as node
-	 */
-	private void initializeDijkstraMinPriorityQueue(AbstractQueue<Node> Q, HashSet<Integer> Qbuddy, 
-			HashSet<Integer> destinations,int originNodeID, Node originNode) {
-		for (Node node: nodes.values()) {
-			if (node.getId() != originNodeID){
-				node.dijkstraDist = M;
-				node.dijkstraPrev = null;
-				node.dijkstraVisitied = false;
-			} else {
-				originNode.dijkstraDist = 0;
-				node.dijkstraVisitied = true;
-			}
-		}
-
-		//		Add only the origin node to the priority queue
-		Q.add(originNode);
-		Qbuddy.add(originNodeID);
-		//	for (OD od : ods.get(originNodeID).values()) {
-		//		destinations.add(od.D);
-		//	}
-		for(int nodeId : nodes.keySet()){
-			if(nodeId != originNode.getId()){
-				destinations.add(nodeId);
-			}
-		}
+		return ods.get(O, D);
 	}
 
 	/**
@@ -1033,16 +2127,12 @@ public class Network {
 	 */
 	public void loadNetwork() {
 		// Reset link counts to 0
-		for (Edge edge: edges.values()) {
-			edge.setFlow(0);
-		}
+		edgeStore.resetFlows();
 
 		// Load network path by adding flow path by path
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				for (Path path: od.restrictedChoiceSet) {
-					path.load();
-				}
+		for (OD od: ods) { // For each OD-pair
+			for (Path path: od.restrictedChoiceSet) {
+				path.load();
 			}
 		}
 	}
@@ -1056,16 +2146,14 @@ public class Network {
 	 */
 	public int maxChoiceSetSize() {
 		int maxChoiceSetSize = 0;
-		for (HashMap<Integer,OD> m: ods.values()) {
-			for (OD od: m.values()) {
-				int routesInThisOD = 0;
-				for (Path path: od.restrictedChoiceSet) {
-					if (path.getFlow() > 0) {
-						routesInThisOD ++;
-					}
+		for (OD od: ods) {
+			int routesInThisOD = 0;
+			for (Path path: od.restrictedChoiceSet) {
+				if (path.getFlow() > 0) {
+					routesInThisOD ++;
 				}
-				maxChoiceSetSize = Math.max(maxChoiceSetSize, routesInThisOD);
 			}
+			maxChoiceSetSize = Math.max(maxChoiceSetSize, routesInThisOD);
 		}
 		return maxChoiceSetSize;
 	}
@@ -1079,124 +2167,150 @@ public class Network {
 	 */
 	public int minChoiceSetSize() {
 		double minChoiceSetSize = Integer.MAX_VALUE;
-		for (HashMap<Integer,OD> m: ods.values()) {
-			for (OD od: m.values()) {
-				int routesInThisOD = 0;
-				for (Path path: od.restrictedChoiceSet) {
-					if (path.getFlow() > 0) {
-						routesInThisOD ++;
-					}
-
+		for (OD od: ods) {
+			int routesInThisOD = 0;
+			for (Path path: od.restrictedChoiceSet) {
+				if (path.getFlow() > 0) {
+					routesInThisOD ++;
 				}
-				minChoiceSetSize = Math.min(minChoiceSetSize, routesInThisOD);
+
 			}
+			minChoiceSetSize = Math.min(minChoiceSetSize, routesInThisOD);
 		}
 		return minChoiceSetSize();
 	}
 
 	/**
-	 * The recursive algorithm that enumerates the 
-	 * universal choice set; its basic principle is that
-	 * the universal choice set from A to B equals the 
-	 * union of the universal choice sets from the neighbours of
-	 * A to B. To eliminate acyclic routes, recursive calls do not 
-	 * include already visited nodes. Finally, the base case is when
-	 * B is a neighbor of A. See the algorithm implementation to 
-	 * better understand the concept if needed.
+	 * Enumerates all paths of an OD that satisfy the global and local cost
+	 * constraints with {@link Network#minos}, handing them to {@code sink}.
 	 * 
-	 * @param od the OD the holds the destination to which to
-	 * find all shortest path
-	 * @param u the ID of the node from which to find all shortest paths
-	 * @param currentPath the path which was taken to get to u from the origin
-	 * in the OD
-	 * @param unvisited an array such that unvisited[i] is true if node i
-	 * has not yet been visited
-	 */
-	private void minos(OD od, int u, int[] currentPath, double lengthOfCurrentPath, boolean[] unvisited, double maximumToleratedPathCostFromOtoD) {
-		// Recursive function to enumerate and save all acyclic paths.
-		for (int v : this.getNode(u).getNeighbours()) {	
-			if (v == od.D) {// Base case: The considered node is the
-				// destination. Add path and cont.
-				int[] newNodeSeq = new int[currentPath.length + 1];
-				for (int i = 0; i < currentPath.length ; i++) {
-					newNodeSeq[i] = Integer.valueOf(currentPath[i]);
+	 * @param od the OD
+	 * @param maximumToleratedPathCostFromOtoD the global cost bound
+	 * @param sink the sink of the paths
+	 * @see ExhaustiveChoiceSetGenerator
+	 */
+	void enumerateAllPaths(OD od, double maximumToleratedPathCostFromOtoD, PathSink sink) {
+		int origin = getNode(od.O).getIndex();
+		int firstArc = topology.offsets[origin];
+		int lastArc = topology.offsets[origin + 1];
+		boolean counted = sink instanceof CountingPathSink;
+		PathSink target = counted ? ((CountingPathSink) sink).sink : sink;
+		if (pool != null && ForkJoinTask.getPool() == pool && lastArc - firstArc > 1 
+				&& target instanceof MemoryPathSink) {
+			// Within a parallel generation, the subtrees of the search below
+			// each arc out of the origin are tasks, and their paths are 
+			// concatenated in the order of the arcs. Other sinks get the 
+			// paths as they are found, rather than collected per task
+			FirstArcTask[] tasks = new FirstArcTask[lastArc - firstArc];
+			for (int a = firstArc; a < lastArc; a++) {
+				tasks[a - firstArc] = new FirstArcTask(od, maximumToleratedPathCostFromOtoD, a, counted);
+			}
+			ForkJoinTask.invokeAll(tasks);
+			int[] pathEdges = new int[getNumNodes()];
+			for (FirstArcTask task: tasks) {
+				for (Path path: task.paths) {
+					target.add(od, pathEdges, path.copyEdges(pathEdges));
 				}
-				newNodeSeq[newNodeSeq.length - 1] = v;
-
-				this.addPathToUniversalChoiceSet(od, newNodeSeq); // add path to R
-				totalNumberOfPaths++;
-				totalNumberOfNodesInPaths += newNodeSeq.length;
-			} else if (unvisited[v - 1] && lengthOfCurrentPath + dijkstraDists.get(v).get(od.D) <= maximumToleratedPathCostFromOtoD) { // Else, find all acyclic routes from
-				// unvisited neighbours
-				boolean localConstraintViolated = false;
-				
-				
+			}
+		} else {
+			minos(od, maximumToleratedPathCostFromOtoD, firstArc, lastArc, sink);
+		}
+	}
+
+	/**
+	 * The depth-first search that enumerates the universal choice set; 
+	 * its basic principle is that the universal choice set from A to B 
+	 * equals the union of the universal choice sets from the neighbours of
+	 * A to B. To eliminate cyclic routes, a path is not extended to nodes
+	 * it has already visited. Whenever B is a neighbour of the last node,
+	 * the path to B is added. A path is only extended to a node from which
+	 * B can be reached within the global cost bound, and, if the local 
+	 * constraint is enabled, only if none of the subpaths ending at the new
+	 * node costs more than {@code localMaximumCostRatio} times the 
+	 * shortest path between its end nodes.
+	 * <p>
+	 * The search runs on an explicit stack holding, for each node of the
+	 * current path, the next arc to follow, the cost of the path up to the
+	 * node and the cost of the edge into it, so the length of a path is not
+	 * limited by the call stack. The visited marks are set as the path is
+	 * extended and cleared as it is shortened, so extending a path 
+	 * allocates nothing. The paths are found in the order of the recursive
+	 * formulation, with their costs summed in the same order.
+	 * 
+	 * @param od the OD the holds the destination to which to
+	 * find all paths
+	 * @param maximumToleratedPathCostFromOtoD the global cost bound
+	 * @param firstArc the first arc out of the origin to follow
+	 * @param lastArc one past the last arc out of the origin to follow
+	 * @param sink the sink of the paths found
+	 */
+	private void minos(OD od, double maximumToleratedPathCostFromOtoD, int firstArc, int lastArc, PathSink sink) {
+		int origin = getNode(od.O).getIndex();
+		int destination = getNode(od.D).getIndex();
+		boolean localConstraintEnabled = isLocalConstraintEnabled();
+		final int[] offsets = topology.offsets;
+		final int[] heads = topology.heads;
+		final int[] edges = topology.edges;
+		final double[] genCost = edgeStore.genCost;
+		int numNodes = getNumNodes();
+
+		// The current path, node by node
+		int[] pathNodes = new int[numNodes];
+		int[] nextArc = new int[numNodes];
+		double[] costToNode = new double[numNodes];
+		double[] costOfEdgeIntoNode = new double[numNodes];
+		int[] pathEdges = new int[numNodes];
+		boolean[] visited = new boolean[numNodes];
+
+		int depth = 0;
+		pathNodes[0] = origin; // The search starts in the origin node
+		nextArc[0] = firstArc;
+		visited[origin] = true;
+		while (depth >= 0) {
+			int u = pathNodes[depth];
+			int a = nextArc[depth];
+			if (a == (depth == 0 ? lastArc : offsets[u + 1])) { // All arcs out of u are done; backtrack
+				visited[u] = false;
+				depth--;
+				continue;
+			}
+			nextArc[depth] = a + 1;
+			int v = heads[a];
+			if (v == destination) { // The considered node is the destination. Add path and cont.
+				pathEdges[depth] = edges[a];
+				sink.add(od, pathEdges, depth + 1);
+			} else if (!visited[v] && costToNode[depth] + distanceToDestination(v, destination) <= maximumToleratedPathCostFromOtoD) {
+				double edgeCost = genCost[edges[a]];
+
 				/* Although the path does not violate the global cost criterion, it might violate a local cost criterion.
 				   Since this is tested every time the path is expanded, it only needs to be checked for the subtours from any of the existing nodes to the new node.
 				   If the criterion is violated for any of the subtours, the path is discontinued. */
-				
-				double lengthOfSubtour = edgesNodePair.get(currentPath[currentPath.length-1]).get(v).getGenCost();
-				/*First if is comparing to shortest path to previous node visited. Note that dijkstraDists refers to a hashmap with shortest paths between all node pairs (previously generated)*/
-				if(lengthOfSubtour <= dijkstraDists.get(currentPath[currentPath.length-1]).get(v) * localMaximumCostRatio){
+				if (localConstraintEnabled) {
+					double lengthOfSubtour = edgeCost;
+					/*First comparing to shortest path to previous node visited. Note that allPairsDistances holds the shortest paths between all node pairs (previously generated)*/
+					boolean localConstraintViolated = !(lengthOfSubtour <= allPairsDistances.get(u, v) * localMaximumCostRatio);
 					/*if not violated, then loop through all previous nodes visited - potentially until origin*/
-					for(int i = currentPath.length  - 2; i >= 0; i--){
-						lengthOfSubtour += edgesNodePair.get(currentPath[i]).get(currentPath[i+1]).getGenCost();
-						if( lengthOfSubtour > dijkstraDists.get(currentPath[i]).get(v) * localMaximumCostRatio ){
-							/*if local detour constraint violated, then break*/
+					for (int i = depth - 1; i >= 0 && !localConstraintViolated; i--) {
+						lengthOfSubtour += costOfEdgeIntoNode[i + 1];
+						if (lengthOfSubtour > allPairsDistances.get(pathNodes[i], v) * localMaximumCostRatio) {
 							localConstraintViolated = true;
-							break;
 						}
 					}
-				} else {
-					localConstraintViolated = true;
-				}
-				if(localConstraintViolated){
-					continue;
-				}
-
-
-				double lengthOfNewCurrentPath = lengthOfCurrentPath + edgesNodePair.get(u).get(v).getGenCost();
-
-				int[] newCurrentPath = new int[currentPath.length + 1];
-				//a deepcopy is required here to avoid paths being modified 
-				//		from other recursions
-				for (int i = 0; i < currentPath.length; i++) {
-					newCurrentPath[i] = currentPath[i];
-				}
-				newCurrentPath[newCurrentPath.length - 1] = v;
-
-				boolean[] newUnvisited = new boolean[unvisited.length];
-				for (int i = 0; i < newUnvisited.length; i++) {
-					newUnvisited[i] = unvisited[i];
+					if (localConstraintViolated) {
+						continue;
+					}
 				}
-				newUnvisited[v - 1] = false;
 
-				minos(od, v, newCurrentPath, lengthOfNewCurrentPath, newUnvisited, maximumToleratedPathCostFromOtoD);
+				// Extend the path to v
+				pathEdges[depth] = edges[a];
+				depth++;
+				pathNodes[depth] = v;
+				nextArc[depth] = offsets[v];
+				costToNode[depth] = costToNode[depth - 1] + edgeCost;
+				costOfEdgeIntoNode[depth] = edgeCost;
+				visited[v] = true;
 			}
 		}
-		return;
-	}
-
-	//TODO check formatting of code part
-	/**
-	 * Takes in a sequence of integers corresponding to nodes
-	 * and returns a list of edges corresponding to the
-	 * pairs of nodes that occur in the series:
-	 * 
-	 * <code>
-	 * in:  node1|node2|node3
-	 * out:  edge12 | edge23
-	 * </code>
-	 * @param nodeSeq sequence of node IDs on the path 
-	 * @return an array list of edges corespondding to the 
-	 * passed node sequence
-	 */
-	private ArrayList<Edge> nodeSeqAsEdgeList(int[] nodeSeq) {
-		ArrayList<Edge> edges = new ArrayList<Edge>();
-		for (int i = 0; i < nodeSeq.length - 1; i++) {
-			edges.add(getEdge(nodeSeq[i], nodeSeq[i+1]));
-		}
-		return edges;
 	}
 
 	/**
@@ -1234,35 +2348,34 @@ public class Network {
 		out.print(delim);
 		out.print("Time");
 		out.print("\n");
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				for (Path path: od.restrictedChoiceSet) {
-					if (path.getFlow() >= minimumFlowToBeConsideredUsed) { //for each used path
-						//						print the path
-						out.print(od.O);
-						out.print(delim);
-						out.print(od.D);
-						out.print(delim);
-						for (Edge edge: path.edges) {
-							out.print(edge.getTail());
-							out.print(" ");
-						}
-						out.print(path.edges.get(path.edges.size()-1).getHead()); //Print last node in path
-						out.print(delim);
-						out.print(path.p);
-						out.print(delim);
-						out.print(path.getFlow());
-						out.print(delim);
-						out.print(path.genCost);
-						out.print(delim);
-						out.print(path.length);
-						out.print(delim);
-						if (RUM.betaTime > 0) {
-							out.print( (path.genCost-RUM.betaLength * path.length) / RUM.betaTime ); } else {out.print(-1);};
-							out.println();
+		for (OD od: ods) { // For each OD-pair
+			for (Path path: od.restrictedChoiceSet) {
+				if (path.getFlow() >= minimumFlowToBeConsideredUsed) { //for each used path
+					//						print the path
+					out.print(od.O);
+					out.print(delim);
+					out.print(od.D);
+					out.print(delim);
+					int[] edges = path.getEdgeIndices();
+					for (int e: edges) {
+						out.print(edgeStore.tail[e]);
+						out.print(" ");
 					}
-
+					out.print(edgeStore.head[edges[edges.length-1]]); //Print last node in path
+					out.print(delim);
+					out.print(path.p);
+					out.print(delim);
+					out.print(path.getFlow());
+					out.print(delim);
+					out.print(path.genCost);
+					out.print(delim);
+					out.print(path.length);
+					out.print(delim);
+					if (RUM.betaTime > 0) {
+						out.print( (path.genCost-RUM.betaLength * path.length) / RUM.betaTime ); } else {out.print(-1);};
+						out.println();
 				}
+
 			}
 		}
 		out.close();
@@ -1337,7 +2450,8 @@ public class Network {
 		out.print(delim);
 		out.print("Time");
 		out.print("\n");
-		for (Edge edge: edges.values()) {
+		for (int i = 0; i < numEdges; i++) {
+			Edge edge = edgeArray[i];
 			out.print(edge.getId());
 			out.print(delim);
 			out.print(edge.getFlow());
@@ -1519,7 +2633,8 @@ public class Network {
 
 			}
 
-			edges = new HashMap<Integer,Edge>();
+			ArrayList<Edge> edgeList = new ArrayList<Edge>(Math.max(numEdges, 0));
+			edgeStore = new EdgeStore(numEdges);
 			int edgeIndex = 0;
 			//			find the first occurence of "~"
 			boolean foundHeaderToken = false;
@@ -1540,7 +2655,7 @@ public class Network {
 				if (!dataLine.equals("")){
 					Scanner in = new Scanner(dataLine);
 					in.useLocale(Locale.ENGLISH);
-					Edge thisEdge = new Edge();
+					Edge thisEdge = new Edge(edgeStore);
 					thisEdge.setId(edgeIndex + 1);
 					thisEdge.setTail(in.nextInt());
 					thisEdge.setHead(in.nextInt());
@@ -1549,7 +2664,7 @@ public class Network {
 					thisEdge.setFreeFlowTime(in.nextDouble());
 					thisEdge.setB(in.nextDouble());
 					thisEdge.setPower(in.nextDouble());
-					edges.put(thisEdge.getId(),thisEdge);
+					edgeList.add(thisEdge);
 					in.close();
 					edgeIndex++;
 				}
@@ -1567,7 +2682,8 @@ public class Network {
 			}
 			rowScanner = new Scanner(file);
 
-			nodes = new HashMap<Integer,Node>();
+			nodeIndex = new IdIndex(Math.max(numNodes, 0));
+			ArrayList<Node> nodeList = new ArrayList<Node>(Math.max(numNodes, 0));
 			boolean didRead = false;
 			while (rowScanner.hasNextLine()) {
 				String dataLine = rowScanner.nextLine();
@@ -1576,12 +2692,8 @@ public class Network {
 					didRead = true;
 					Scanner in = new Scanner(dataLine);
 					in.useLocale(Locale.ENGLISH);
-					Node node = new Node();
 					int nodeId = in.nextInt();
-					node.setId(nodeId);
-					node.setX(in.nextDouble());
-					node.setY(in.nextDouble());
-					nodes.put(nodeId, node);
+					addNode(nodeList, nodeId, in.nextDouble(), in.nextDouble());
 					in.close();
 				}
 
@@ -1592,14 +2704,20 @@ public class Network {
 			rowScanner.close();
 			if (!didRead) {
 				for (int i = 0; i < numNodes; i++) {
-					Node node = new Node();
-					int Id = i + 1;
-					node.setId(Id);
-					node.setX(0);
-					node.setY(0);
-					nodes.put(Id, node);
+					addNode(nodeList, i + 1, 0, 0);
 				}
 			}
+			//			Nodes that are referenced by edges but are missing from the 
+			//			node file are added with the coordinates 0,0.
+			int numNodesInFile = nodeList.size();
+			for (Edge edge: edgeList) {
+				if (nodeIndex.getIndex(edge.getTail()) < 0) addNode(nodeList, edge.getTail(), 0, 0);
+				if (nodeIndex.getIndex(edge.getHead()) < 0) addNode(nodeList, edge.getHead(), 0, 0);
+			}
+			if (didRead && nodeList.size() > numNodesInFile) {
+				System.err.println("Warning! " + (nodeList.size() - numNodesInFile) + " nodes used by edges were not in the node file.");
+			}
+			nodeArray = nodeList.toArray(new Node[nodeList.size()]);
 
 			System.out.println("Done!");
 			System.out.println("Reading demand: ");
@@ -1614,7 +2732,8 @@ public class Network {
 			// Read metadata
 
 
-			ods = new HashMap<Integer,HashMap<Integer,OD>>();
+			ArrayList<OD> odList = new ArrayList<OD>();
+			HashSet<Integer> originsWithDemand = new HashSet<Integer>();
 			int originNode = 0;
 			int destinationNode = 0;
 			double demand = -1;
@@ -1647,8 +2766,7 @@ public class Network {
 						odScanner.next(); //skip :
 						demand = odScanner.nextDouble() * demandScale;
 						if (demand > 0) {
-							if (!ods.containsKey(originNode)) {
-								ods.put(originNode, new HashMap<Integer,OD>());
+							if (originsWithDemand.add(originNode)) {
 								numOD ++;
 								if(numOD % Math.pow(2,modCounter) == 0 ){
 									modCounter++;
@@ -1657,7 +2775,7 @@ public class Network {
 									System.out.printf("%-11s\n", Runtime.getRuntime().freeMemory() / 1048576);
 								}
 							}
-							ods.get(originNode).put(destinationNode, new OD(originNode, destinationNode, demand));
+							odList.add(new OD(originNode, destinationNode, demand));
 						}
 						odScanner.close();
 					}
@@ -1665,6 +2783,7 @@ public class Network {
 				in.close();
 			}
 			rowScanner.close();
+			ods = new ODTable(odList);
 			this.numOD = numOD;
 			System.out.println("Done!");
 
@@ -1672,11 +2791,10 @@ public class Network {
 			// Generate neighbours
 
 			System.out.print("Finalising... ");
-			for (Edge edge: edges.values()) {
+			ArrayList<Edge> oppositeEdges = new ArrayList<Edge>();
+			for (Edge edge: edgeList) {
 				int tail = edge.getTail();
 				int head = edge.getHead();
-				// For each edge, the head is a neighbour to the tail.
-				this.getNode(tail).getNeighbours().add(head);
 				//Map node pairs to edges
 				if (!edgesNodePair.containsKey(tail)) {
 					edgesNodePair.put(tail, new HashMap<Integer,Edge>());
@@ -1689,15 +2807,18 @@ public class Network {
 						edgesNodePair.put(head, new HashMap<Integer,Edge>());
 					}
 					edgesNodePair.get(oppositeEdge.getTail()).put(oppositeEdge.getHead(), oppositeEdge);
+					oppositeEdges.add(oppositeEdge);
 				}
 			}
+			buildTopology(edgeList, oppositeEdges);
 
 			//Register which nodes have demand
-			for (HashMap<Integer, OD> m: ods.values()) {
-				for (OD od: m.values()) { // For each OD-pair
-					this.getNode(od.O).setHasDemandFrom(true);
-					this.getNode(od.D).setHasDemandTo(true);
+			for (OD od: ods) { // For each OD-pair
+				if (this.getNode(od.O) == null || this.getNode(od.D) == null) {
+					throw new InputMismatchException("Demand from " + od.O + " to " + od.D + " refers to a node which is not in the network.");
 				}
+				this.getNode(od.O).setHasDemandFrom(true);
+				this.getNode(od.D).setHasDemandTo(true);
 			}
 			System.out.println("Done!");
 
@@ -1715,11 +2836,74 @@ public class Network {
 
 
 	/**
+	 * Adds a node to the network, interning its ID as the next dense index.
+	 * If a node with the same ID was already added, its coordinates are
+	 * overwritten instead.
 	 * 
-	 */
+	 * @param nodeList the list of nodes read so far, by dense index
+	 * @param nodeId the ID of the node in the network files
+	 * @param x first coordinate of the node
+	 * @param y second coordinate of the node
+	 */
+	private void addNode(ArrayList<Node> nodeList, int nodeId, double x, double y) {
+		int index = nodeIndex.intern(nodeId);
+		Node node;
+		if (index < nodeList.size()) {
+			node = nodeList.get(index);
+		} else {
+			node = new Node();
+			node.setId(nodeId);
+			node.setIndex(index);
+			nodeList.add(node);
+		}
+		node.setX(x);
+		node.setY(y);
+	}
+
+	/**
+	 * Interns the edge IDs as the dense indices that the edges were given by
+	 * the {@linkplain EdgeStore} (in the order they were read, followed by the
+	 * opposite edges of a bidirectional network), and builds the 
+	 * {@linkplain Topology} of the network.
+	 * <p>
+	 * For each edge, the head is a neighbour of the tail, and the arc
+	 * refers to the edge that {@link Network#getEdge(int, int)} returns for
+	 * that node pair.
+	 * 
+	 * @param edgeList the edges read from the network file
+	 * @param oppositeEdges the opposite edges created for a bidirectional
+	 * network; these are not traversed, but are given dense indices.
+	 */
+	private void buildTopology(ArrayList<Edge> edgeList, ArrayList<Edge> oppositeEdges) {
+		numEdges = edgeList.size();
+		edgeIndex = new IdIndex(numEdges + oppositeEdges.size());
+		edgeArray = new Edge[numEdges + oppositeEdges.size()];
+		for (Edge edge: edgeList) {
+			edgeIndex.intern(edge.getId());
+			edgeArray[edge.getIndex()] = edge;
+		}
+		for (Edge edge: oppositeEdges) {
+			edgeIndex.intern(edge.getId());
+			edgeArray[edge.getIndex()] = edge;
+		}
+		edgeStore.finish();
+
+		int[] tails = new int[numEdges];
+		int[] heads = new int[numEdges];
+		int[] edgeIndices = new int[numEdges];
+		for (int i = 0; i < numEdges; i++) {
+			Edge edge = edgeList.get(i);
+			tails[i] = getNode(edge.getTail()).getIndex();
+			heads[i] = getNode(edge.getHead()).getIndex();
+			edgeIndices[i] = getEdge(edge.getTail(), edge.getHead()).getIndex();
+		}
+		topology = new Topology(nodeArray.length, edgeStore.size(), tails, heads, edgeIndices);
+		contractionHierarchy = null;
+		landmarks = null;
+	}
 
 	private Edge createOppositeEdge(Edge edge){
-		Edge oppositeEdge = new Edge();
+		Edge oppositeEdge = new Edge(edgeStore);
 		oppositeEdge.setB(edge.getB());
 		oppositeEdge.setCapacity(edge.getCapacity());
 		oppositeEdge.setFreeFlowTime(edge.getFreeFlowTime());
@@ -1746,20 +2930,18 @@ public class Network {
 		double enumerator = 0;
 		double denominator = 0;
 
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				// Find minimum cost path for that OD
-				cmin = od.getMinimumTransformedCost();
-
-				// Add appropriate terms to running sum
-				for (Path path : od.restrictedChoiceSet) {
-					double flow = path.getFlow();
-					if (flow > 0) {
-						enumerator += flow * (path.transformedCost - cmin);
-						denominator += flow * (path.transformedCost);
-					}
+		for (OD od: ods) { // For each OD-pair
+			// Find minimum cost path for that OD
+			cmin = od.getMinimumTransformedCost();
 
+			// Add appropriate terms to running sum
+			for (Path path : od.restrictedChoiceSet) {
+				double flow = path.getFlow();
+				if (flow > 0) {
+					enumerator += flow * (path.transformedCost - cmin);
+					denominator += flow * (path.transformedCost);
 				}
+
 			}
 		}
 		double relGapUsed = enumerator / denominator;
@@ -1771,15 +2953,11 @@ public class Network {
 	 * restricted choice sets to 0.
 	 */
 	public void resetNetwork() {
-		for (Edge edge : this.edges.values()) {
-			edge.setFlow(0);
-		}
+		edgeStore.resetFlows();
 
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				od.restrictedChoiceSet = new ArrayList<Path>();
-				//			od.updateDelta();
-			}
+		for (OD od: ods) { // For each OD-pair
+			od.restrictedChoiceSet = new ArrayList<Path>();
+			//			od.updateDelta();
 		}
 	}
 
@@ -1797,29 +2975,54 @@ public class Network {
 	public void restrictedInnerMasterProblem(RUM rum, double gamma) {
 		// Calculate and save pathwise-auxiliary flows
 		double denominatorInProbabilityExpression;
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				// Calculate utility logsum for MNL
-				denominatorInProbabilityExpression = 0;
-				for (Path path : od.restrictedChoiceSet) {
-					path.enumeratorInProbabilityExpression = rum.computeEnumeratorInProbabilityExpression(path);
-					denominatorInProbabilityExpression += path.enumeratorInProbabilityExpression;
+		for (OD od: ods) { // For each OD-pair
+			// Calculate utility logsum for MNL
+			denominatorInProbabilityExpression = 0;
+			for (Path path : od.restrictedChoiceSet) {
+				path.enumeratorInProbabilityExpression = rum.computeEnumeratorInProbabilityExpression(path);
+				denominatorInProbabilityExpression += path.enumeratorInProbabilityExpression;
 
-				}
+			}
 
-				for (Path path : od.restrictedChoiceSet) {
-					path.p = path.enumeratorInProbabilityExpression / denominatorInProbabilityExpression;
-				}
+			for (Path path : od.restrictedChoiceSet) {
+				path.p = path.enumeratorInProbabilityExpression / denominatorInProbabilityExpression;
+			}
 
-				for (Path path: od.restrictedChoiceSet) {
-					path.setAuxFlow(od.demand * path.p);
-					path.setFlow(path.getFlow() * (1 - gamma) + path.getAuxFlow() * gamma);
-				}
+			for (Path path: od.restrictedChoiceSet) {
+				path.setAuxFlow(od.demand * path.p);
+				path.setFlow(path.getFlow() * (1 - gamma) + path.getAuxFlow() * gamma);
 			}
 		}
 	}
 
 
+	/**
+	 * @return true unless the local cost constraint of the choice set
+	 * enumeration is disabled by an infinite {@code localMaximumCostRatio},
+	 * in which case the distances between all pairs of nodes are not needed
+	 */
+	public boolean isLocalConstraintEnabled() {
+		return localMaximumCostRatio != Double.POSITIVE_INFINITY;
+	}
+
+	public double getLocalMaximumCostRatio() {
+		return localMaximumCostRatio;
+	}
+
+	/**
+	 * @return the adjacency of the network by dense node and edge index
+	 */
+	public Topology getTopology() {
+		return topology;
+	}
+
+	/**
+	 * @return the state of the edges by dense edge index
+	 */
+	public EdgeStore getEdgeStore() {
+		return edgeStore;
+	}
+
 	/**
 	 * Sets the 
 	 * @param localMaximumCostRatio
@@ -1841,37 +3044,67 @@ public class Network {
 	/**
 	 * Uses the predecessors of each nodes found by a dijktra's algorithm
 	 * to determine the shortest path from O to D. This method only
-	 * works when dijkstra's algorithm was last called on node {@code od.O}.
+	 * works when dijkstra's algorithm was last called on node {@code od.O}
+	 * in {@code workspace}.
 	 * 
 	 * @param od the OD between which to find the shortest path based on
 	 * the last dijkstra search performed on the origin. 
+	 * @param workspace the workspace of that search
 	 * @return the shortest path from {@code od.O} to {@code od.D}.
 	 */
-	private Path shortestPath(OD od) {
-		Node origin = getNode(od.O);
-		Node destination = getNode(od.D);
+	private Path shortestPath(OD od, ShortestPathWorkspace workspace) {
+		int numEdgesInPath = backtrackShortestPath(od, workspace);
+		Path path = new Path(Arrays.copyOf(workspace.pathEdges, numEdgesInPath),edgeStore,od);
+		
+		return path;
+	}
 
-		// First construct inverse sequence as array list
-		ArrayList<Integer> invSeq = new ArrayList<Integer>();
-		// Backtrack the path from the destination until origin is reached
-		Node u = destination;
-		while (u != origin) {
-			invSeq.add(u.getId());
-			u = u.dijkstraPrev;
-		}
-		// Add origin
-		invSeq.add(origin.getId());
+	/**
+	 * Backtracks the shortest path from {@code od.O} to {@code od.D} like
+	 * {@link Network#shortestPath(OD, ShortestPathWorkspace)}, but writes
+	 * the dense indices of its edges to {@code workspace.pathEdges} instead
+	 * of creating a path.
+	 * 
+	 * @param od the OD between which to find the shortest path based on
+	 * the last dijkstra search performed on the origin. 
+	 * @param workspace the workspace of that search
+	 * @return the number of edges in the shortest path
+	 */
+	private int backtrackShortestPath(OD od, ShortestPathWorkspace workspace) {
+		return backtrackShortestPath(od, workspace.predEdge, workspace);
+	}
 
-		int numEdgesInPath = invSeq.size()-1;
-		ArrayList<Edge> edgesInPath = new ArrayList<Edge>(numEdgesInPath);
-		//Iterate backwards
-		for (int i = numEdgesInPath; i > 0; i--) {
-			edgesInPath.add(edgesNodePair.get(invSeq.get(i)).get(invSeq.get(i-1)));
+	/**
+	 * Backtracks the shortest path from {@code od.O} to {@code od.D} in a
+	 * shortest path tree given by the last edge of the path to each node.
+	 * 
+	 * @param od the OD between which to find the shortest path
+	 * @param predEdge the dense index of the last edge of the shortest path
+	 * from {@code od.O} to each node
+	 * @param workspace the workspace whose {@code pathEdges} receive the
+	 * edges of the path
+	 * @return the number of edges in the shortest path
+	 */
+	private int backtrackShortestPath(OD od, int[] predEdge, ShortestPathWorkspace workspace) {
+		int origin = getNode(od.O).getIndex();
+		int destination = getNode(od.D).getIndex();
+		final int[] pred = topology.edgeTails;
+
+		// Count the edges by backtracking from the destination until origin is reached
+		int numEdgesInPath = 0;
+		for (int u = destination; u != origin; u = pred[predEdge[u]]) {
+			numEdgesInPath++;
 		}
-
-		Path path = new Path(edgesInPath,od);
-		
-		return path;
+		workspace.ensurePathCapacity(numEdgesInPath);
+		final int[] pathEdges = workspace.pathEdges;
+
+		// Backtrack again, filling in the edges from the back
+		int u = destination;
+		for (int i = numEdgesInPath - 1; i >= 0; i--) {
+			pathEdges[i] = predEdge[u];
+			u = pred[predEdge[u]];
+		}
+		return numEdgesInPath;
 	}
 
 	/**
@@ -1880,11 +3113,12 @@ public class Network {
 	 * @see Path#compareTo(Path)
 	 */
 	public void sortUniversalChoiceSets() {
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
+		getChoiceSetManager().forEach(new ChoiceSetPipeline.Stage() {
+			@Override
+			public void process(OD od) {
 				Collections.sort(od.R);
 			}
-		}
+		});
 	}
 
 	/**
@@ -1897,10 +3131,8 @@ public class Network {
 	 * choice set does not equal the demand on the OD.
 	 */
 	public OD testDemandIntegrity(double tolerance) {
-		for (HashMap<Integer,OD> m: ods.values()) {
-			for (OD od: m.values()) {
-				if( testDemandIntegrity(od, tolerance)) return od;
-			}
+		for (OD od: ods) {
+			if( testDemandIntegrity(od, tolerance)) return od;
 		}
 		return null;
 	}
@@ -1940,41 +3172,47 @@ public class Network {
 	public void unrestrictedMasterProblemInnerLogit(RUM rum, RefCostFun omega, double gamma) {
 		// Calculate and save pathwise-auxiliary flows
 		double denominatorInProbabilityExpression;
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) {
-				// For each OD-pair
-				// Calculate utility logsum for MNL
-				denominatorInProbabilityExpression = 0;
-				double threshold = omega.calculateRefCost(od);
-				for (Path path : od.restrictedChoiceSet) {
-					if (path.genCost <= threshold) {
-						path.enumeratorInProbabilityExpression = rum.computeEnumeratorInProbabilityExpression(path);
-						denominatorInProbabilityExpression += path.enumeratorInProbabilityExpression;
-						path.setHasBeenUsed(true);
-					} else path.enumeratorInProbabilityExpression = 0;
+		for (OD od: ods) {
+			// For each OD-pair
+			// Calculate utility logsum for MNL
+			denominatorInProbabilityExpression = 0;
+			double threshold = omega.calculateRefCost(od);
+			for (Path path : od.restrictedChoiceSet) {
+				if (path.genCost <= threshold) {
+					path.enumeratorInProbabilityExpression = rum.computeEnumeratorInProbabilityExpression(path);
+					denominatorInProbabilityExpression += path.enumeratorInProbabilityExpression;
+					path.setHasBeenUsed(true);
+				} else path.enumeratorInProbabilityExpression = 0;
 
-				}
-				for (Path path : od.restrictedChoiceSet) {
-					path.p = path.enumeratorInProbabilityExpression / denominatorInProbabilityExpression;
-				}
+			}
+			for (Path path : od.restrictedChoiceSet) {
+				path.p = path.enumeratorInProbabilityExpression / denominatorInProbabilityExpression;
+			}
 
-				for (Path path: od.restrictedChoiceSet) {
-					path.setAuxFlow(od.demand * path.p);
-					double flowAfter = path.getFlow() * (1 - gamma) + path.getAuxFlow() * gamma;
-					path.setFlow(flowAfter);
-				}
+			for (Path path: od.restrictedChoiceSet) {
+				path.setAuxFlow(od.demand * path.p);
+				double flowAfter = path.getFlow() * (1 - gamma) + path.getAuxFlow() * gamma;
+				path.setFlow(flowAfter);
 			}
 		}
 	}
 
 	/**
-	 * Updates the cost on edges to correspond to the current flows on them
+	 * Updates the cost on edges to correspond to the current flows on them.
+	 * When the RUM uses the standard generalized cost, times and costs 
+	 * are updated in bulk on the columns of the {@linkplain EdgeStore}.
 	 * @param rum the RUM from which to extract the generalized cost 
 	 * (additive deterministic utility)
+	 * @see RUM#hasStandardGenCost()
 	 */
 	public void updateEdgeCosts(RUM rum) {
-		for (Edge edge: edges.values()) {
-			edge.updateCost(rum);
+		if (rum.hasStandardGenCost()) {
+			edgeStore.updateCosts(RUM.betaTime, RUM.betaLength);
+		} else {
+			edgeStore.updateTimes();
+			for (Edge edge: edgeArray) {
+				edge.setGenCost(rum.genCost(edge));
+			}
 		}
 	}
 
@@ -1985,18 +3223,16 @@ public class Network {
 	 */
 
 	public void updatePathCosts() {
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				double minCost = this.M;
-				for (Path path: od.restrictedChoiceSet) {
-					double thisCost = path.updateCost();
-					if (thisCost < minCost) {
-						minCost = thisCost;
-					}
-
+		for (OD od: ods) { // For each OD-pair
+			double minCost = this.M;
+			for (Path path: od.restrictedChoiceSet) {
+				double thisCost = path.updateCost();
+				if (thisCost < minCost) {
+					minCost = thisCost;
 				}
-				od.setMinimumCost(minCost);
+
 			}
+			od.setMinimumCost(minCost);
 		}
 
 	}
@@ -2013,10 +3249,8 @@ public class Network {
 	 * @see PSL
 	 */
 	public void updatePathSizeFactors(RUM rum) {
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				od.updatePathSizeFactors(rum);
-			}
+		for (OD od: ods) { // For each OD-pair
+			od.updatePathSizeFactors(rum);
 		}
 	}
 
@@ -2031,11 +3265,9 @@ public class Network {
 	 * to retrieve the Path Size factor 
 	 */
 	public void updatePathSizeFactorsWherePathsWereAdded(RUM rum) {
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				if (od.pathWasAddedDuringColumnGeneration) {
-					od.updatePathSizeFactors(rum);
-				}
+		for (OD od: ods) { // For each OD-pair
+			if (od.pathWasAddedDuringColumnGeneration) {
+				od.updatePathSizeFactors(rum);
 			}
 		}
 
@@ -2050,15 +3282,13 @@ public class Network {
 	 * to retrieve the transformed cost
 	 */
 	public void updateTransformedCosts(RouteChoiceModel rcm) {
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				double minTransformedCost = Double.POSITIVE_INFINITY;
-				for (Path path: od.restrictedChoiceSet) {
-					double transCost =  path.updateTransformedCost(rcm);
-					if (path.getFlow() > 0 && transCost < minTransformedCost) minTransformedCost = transCost;
-				}
-				od.setMinimumTransformedCost(minTransformedCost);
+		for (OD od: ods) { // For each OD-pair
+			double minTransformedCost = Double.POSITIVE_INFINITY;
+			for (Path path: od.restrictedChoiceSet) {
+				double transCost =  path.updateTransformedCost(rcm);
+				if (path.getFlow() > 0 && transCost < minTransformedCost) minTransformedCost = transCost;
 			}
+			od.setMinimumTransformedCost(minTransformedCost);
 		}
 	}
 
@@ -2069,27 +3299,33 @@ public class Network {
 	 * constitute them.
 	 */
 	public void updateUniversalChoiceSetCosts() {
-		for (HashMap<Integer, OD> m: ods.values()) {
-			for (OD od: m.values()) { // For each OD-pair
-				if(useLocalStorage){
-					try {
-						loadUniversalChoiceSetFromStorage(od);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				}
-				for (Path path : od.R) {
-					path.updateCost(); // costs
-				}
-				if(useLocalStorage){
-					try {
-						transferUniversalChoiceSetToStorage(od);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-					od.R.clear();
-				}
+		getChoiceSetManager().forEach(new ChoiceSetPipeline.Stage() {
+			@Override
+			public void process(OD od) {
+				updateUniversalChoiceSetCosts(od);
 			}
+		});
+		if(useLocalStorage){
+			flushUniversalStore();
+		}
+	}
+
+	private void updateUniversalChoiceSetCosts(OD od) {
+		for (Path path : od.R) {
+			path.updateCost(); // costs
+		}
+	}
+
+	/**
+	 * Stores the universal choice sets held in memory that have changed,
+	 * and writes the index of the local storage, so that they can be 
+	 * loaded by a later run.
+	 */
+	private void flushUniversalStore() {
+		try {
+			getChoiceSetManager().flush();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
 	}
 
@@ -2104,19 +3340,20 @@ public class Network {
 	public void writeUniversalChoiceSet(String filename) {
 		try {
 			PrintWriter out = new PrintWriter(filename);
-			for (HashMap<Integer, OD> m: ods.values()) {
-				for (OD od: m.values()) { // For each OD-pair
-					out.println(od.R.size() + " ");
-					for (Path path : od.R) {
-						int setSize = path.edges.size();
-						out.print(setSize + " ");
-						for (int i = 0; i < setSize; i++) {
-							out.print(path.edges.get(i).getTail() + " ");
-						}
-						out.print(path.edges.get((setSize - 1))+ " ");
-						out.println();
+			for (OD od: ods) { // For each OD-pair
+				ArrayList<Path> R = getChoiceSetManager().acquire(od);
+				out.println(R.size() + " ");
+				for (Path path : R) {
+					int[] edges = path.getEdgeIndices();
+					int setSize = edges.length;
+					out.print(setSize + " ");
+					for (int i = 0; i < setSize; i++) {
+						out.print(edgeStore.tail[edges[i]] + " ");
 					}
+					out.print(edgeStore.head[edges[setSize - 1]]+ " ");
+					out.println();
 				}
+				getChoiceSetManager().release(od, false);
 			}
 			out.close();
 
@@ -1,23 +1,25 @@
 package network;
 
-import java.util.ArrayList;
-
-import auxiliary.MinPriorityQueue;
-import auxiliary.MyMinPriorityQueue;
-
 /**
  * Symbolises a node in a {@link network.Network}. Is identified with an integer id which is read 
  * from the node network file by {@link Network#Network(String)}. 
- * Note: this class has a natural ordering that is inconsistent with equals.
+ * The labels of shortest path searches are kept per search in a
+ * {@link ShortestPathWorkspace}, indexed by {@link Node#getIndex()}.
  * 
  * @author mesch
  */
-public class Node implements Comparable<Node>{
+public class Node {
     	/**
     	 * identification, used by {@link Network#getNode(int)}
     	 */
 	private int id;
 
+	/**
+	 * dense index of the node, from 0 to the number of nodes minus one,
+	 * used to address the node in the {@link Topology} of the network
+	 */
+	private int index;
+
 	/**
 	 * first  coordinate for plotting, with unit of measurement
 	 * as specified in the network file
@@ -33,28 +35,6 @@ public class Node implements Comparable<Node>{
 	private boolean hasDemandFrom = false;
 	private boolean hasDemandTo = false;
 	
-	/**
-	 * The shortest path distance to this node 
-	 * from the origin where dijkstra's algorithm
-	 * was last run. Together with {@link Node#dijkstraPrev} holds all 
-         * information to deduce the shortest path from some origin to 
-         * any destination with demand to it.
-	 */
-	public double dijkstraDist = -1;
-	
-	/**
-	 * the predecessor of this node when the origin is 
-	 * implicitly given by the last node that dijkstra's 
-	 * algorithm was run on.
-	 */
-	public Node dijkstraPrev = null; 
-	
-	/**
-	 * boolean used in {@linkplain Network#dijkstraMinPriorityQueue(Node)}.
-	 * True when the node has been processed to its final state. 
-	 */
-	public boolean dijkstraVisitied = false;
-	
 	public boolean hasDemandFrom() {
 		return hasDemandFrom;
 	}
@@ -62,11 +42,6 @@ public class Node implements Comparable<Node>{
 		this.hasDemandFrom = hasDemand;
 	}
 	
-	/**
-	 * ArrayList of IDs of nodes that are connected directly by an outgoing link from this node
-	 */
-	private ArrayList<Integer> neighbours = new ArrayList<Integer>();
-	
 	/**
 	 * @return the X coordinate of the node
 	 */
@@ -85,21 +60,21 @@ public class Node implements Comparable<Node>{
 	void setY(double d) {
 		this.y = d;
 	}
-	/**
-	 * @return a saved ArrayList of this node's neighbors
-	 */
-	ArrayList<Integer> getNeighbours() {
-		return neighbours;
-	}
-	void setNeighbours(ArrayList<Integer> neighbours) {
-		this.neighbours = neighbours;
-	}
 	int getId() {
 		return id;
 	}
 	void setId(int id) {
 		this.id = id;
 	}
+	/**
+	 * @return the dense index of the node in the {@link Topology}
+	 */
+	public int getIndex() {
+		return index;
+	}
+	void setIndex(int index) {
+		this.index = index;
+	}
 	/**
 	 * @return value of the boolean field hasDemandTo
 	 */
@@ -112,15 +87,4 @@ public class Node implements Comparable<Node>{
 	public void setHasDemandTo(boolean hasDemandTo) {
 		this.hasDemandTo = hasDemandTo;
 	}
-	/**
-	 * Nodes are naturally ordered by {@code dijkstraDist} to 
-	 * enable use of a minimum-priority queue.
-	 * 
-	 * @see MyMinPriorityQueue
-	 * @see MinPriorityQueue
-	 */
-	@Override
-	public int compareTo(Node o) {
-		return Double.compare(this.dijkstraDist, o.dijkstraDist);
-	}
 }
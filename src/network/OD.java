@@ -39,7 +39,21 @@ public class OD{
 	ArrayList<Path> R;
 	
 	public ArrayList<Path> pseudoR;
-	
+
+	/**
+	 * Fingerprint index of {@code restrictedChoiceSet}, built on demand.
+	 * @see OD#containsPath(int[], int, long)
+	 */
+	private PathIndex pathIndex;
+
+	/**
+	 * The choice set that {@code pathIndex} was built for. The index is 
+	 * rebuilt when {@code restrictedChoiceSet} has been replaced, or 
+	 * changed other than through {@link OD#addPath(Path)} and 
+	 * {@link OD#removePath(Path)}.
+	 */
+	private ArrayList<Path> indexedChoiceSet;
+
 	/**
 	 * Used by private methods in the {@linkplain Network} class.
 	 */
@@ -84,7 +98,47 @@ public class OD{
 	 * @param path the path to be added
 	 */
 	public void addPath(Path path){
+		boolean indexIsCurrent = isPathIndexCurrent();
 		this.restrictedChoiceSet.add(path);
+		if (indexIsCurrent) pathIndex.add(path);
+	}
+
+	/**
+	 * Removes a path from the {@code paths} list.
+	 * 
+	 * @param path the path to be removed
+	 * @return true if the path was in the list
+	 */
+	public boolean removePath(Path path){
+		boolean indexIsCurrent = isPathIndexCurrent();
+		boolean removed = this.restrictedChoiceSet.remove(path);
+		if (indexIsCurrent && removed) pathIndex.remove(path);
+		return removed;
+	}
+
+	/**
+	 * Tells whether a route is already in the restricted choice set,
+	 * using the fingerprint index of the choice set rather than comparing
+	 * the route with each path in it.
+	 * 
+	 * @param edges dense edge indices of the route; only the first
+	 * {@code numEdges} entries are used
+	 * @param numEdges the number of edges in the route
+	 * @param fingerprint the fingerprint of the route, as computed by
+	 * {@link Path#fingerprint(int[], int)}
+	 * @return true if a path with exactly these edges is in the 
+	 * restricted choice set
+	 */
+	boolean containsPath(int[] edges, int numEdges, long fingerprint) {
+		if (!isPathIndexCurrent()) {
+			pathIndex = new PathIndex(restrictedChoiceSet);
+			indexedChoiceSet = restrictedChoiceSet;
+		}
+		return pathIndex.contains(edges, numEdges, fingerprint);
+	}
+
+	private boolean isPathIndexCurrent() {
+		return pathIndex != null && indexedChoiceSet == restrictedChoiceSet && pathIndex.size() == restrictedChoiceSet.size();
 	}
 
 	/**
@@ -161,24 +215,35 @@ public class OD{
 		}
 		//reset deltas
 		double sum;
+		if (choiceSet.isEmpty()) {
+			return;
+		}
+		EdgeStore store = choiceSet.get(0).getStore();
+		int[] numPathsWithEdge = store.numPathsWithEdge;
+		double[] edgeCosts = store.genCost;
+		int[] edges = new int[16];
 		for (Path path: choiceSet) {
-			for (Edge edge: path.edges) {
-				edge.setNumPathsWithEdge(0);
+			edges = copyEdges(path, edges);
+			for (int i = 0, n = path.getNumEdges(); i < n; i++) {
+				numPathsWithEdge[edges[i]] = 0;
 			}
 		}
 		//			Count link occurences
 		for (Path path: choiceSet) {
-		    for (Edge edge: path.edges) {
-				edge.setNumPathsWithEdge(edge.getNumPathsWithEdge()+1);
+			edges = copyEdges(path, edges);
+		    for (int i = 0, n = path.getNumEdges(); i < n; i++) {
+				numPathsWithEdge[edges[i]]++;
 			}
 		}
 		//			calculate PS factors
 		for (Path path : choiceSet) {
 			sum = 0; 
 			double pathCost = path.genCost;
-			for (Edge edge : path.edges) {
-				double delta = edge.getNumPathsWithEdge();
-				sum += edge.getGenCost() / (pathCost * delta);
+			edges = copyEdges(path, edges);
+			for (int i = 0, n = path.getNumEdges(); i < n; i++) {
+				int e = edges[i];
+				double delta = numPathsWithEdge[e];
+				sum += edgeCosts[e] / (pathCost * delta);
 			}
 			if (!Double.isFinite(sum)) {
 				throw new IllegalArgumentException();
@@ -186,4 +251,17 @@ public class OD{
 			path.PS = sum;
 		}
 	}
+
+	/**
+	 * Copies the edges of a path to a buffer, growing the buffer if needed.
+	 * 
+	 * @return the buffer holding the edges
+	 */
+	private static int[] copyEdges(Path path, int[] buffer) {
+		if (buffer.length < path.getNumEdges()) {
+			buffer = new int[Math.max(path.getNumEdges(), 2 * buffer.length)];
+		}
+		path.copyEdges(buffer);
+		return buffer;
+	}
 }
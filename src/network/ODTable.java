@@ -0,0 +1,187 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The OD-relations of a {@link Network} as one contiguous array sorted by
+ * origin and then destination ID. The ODs of each origin therefore occupy
+ * a range of positions, from {@link ODTable#getOriginStart(int)}
+ * (inclusive) to {@link ODTable#getOriginEnd(int)} (exclusive), and
+ * iterating over the table visits all ODs of one origin before moving on
+ * to the next. Algorithms that run one shortest path search per origin
+ * rely on this grouping, and the ranges make it easy to split the work
+ * by origin.
+ * <p>
+ * A specific OD is found by looking up the origin and then searching its
+ * range, which is sorted by destination.
+ *
+ * @see Network#getOD(int, int)
+ */
+public final class ODTable implements Iterable<OD> {
+	private final OD[] ods;
+
+	/**
+	 * Position of the first OD of each origin, followed by the number of ODs.
+	 */
+	private final int[] originOffsets;
+
+	/**
+	 * Interns origin node IDs as the index of their range in
+	 * {@code originOffsets}.
+	 */
+	private final IdIndex originIndex;
+
+	/**
+	 * Builds the table from a list of ODs in any order. If the list holds
+	 * several ODs with the same origin and destination, the last one is kept.
+	 *
+	 * @param odList the OD-relations
+	 */
+	ODTable(ArrayList<OD> odList) {
+		ArrayList<OD> sorted = new ArrayList<OD>(odList);
+		// The sort is stable, so duplicates keep their relative order
+		Collections.sort(sorted, new Comparator<OD>() {
+			@Override
+			public int compare(OD a, OD b) {
+				if (a.O != b.O) return a.O < b.O ? -1 : 1;
+				if (a.D != b.D) return a.D < b.D ? -1 : 1;
+				return 0;
+			}
+		});
+		ArrayList<OD> unique = new ArrayList<OD>(sorted.size());
+		for (int i = 0; i < sorted.size(); i++) {
+			OD od = sorted.get(i);
+			if (i + 1 < sorted.size() && sorted.get(i + 1).O == od.O && sorted.get(i + 1).D == od.D) {
+				continue;
+			}
+			unique.add(od);
+		}
+		ods = unique.toArray(new OD[unique.size()]);
+
+		originIndex = new IdIndex(ods.length);
+		int[] offsets = new int[ods.length + 1];
+		int numOrigins = 0;
+		for (int i = 0; i < ods.length; i++) {
+			if (i == 0 || ods[i].O != ods[i - 1].O) {
+				originIndex.intern(ods[i].O);
+				offsets[numOrigins++] = i;
+			}
+		}
+		offsets[numOrigins] = ods.length;
+		originOffsets = Arrays.copyOf(offsets, numOrigins + 1);
+	}
+
+	/**
+	 * @return the number of OD-relations
+	 */
+	public int size() {
+		return ods.length;
+	}
+
+	/**
+	 * @param i a position in the table
+	 * @return the OD at position {@code i}
+	 */
+	public OD get(int i) {
+		return ods[i];
+	}
+
+	/**
+	 * Finds an OD-relation by the IDs of its end nodes.
+	 *
+	 * @param O the ID of the origin node
+	 * @param D the ID of the destination node
+	 * @return the OD, or null if there is no demand from {@code O} to {@code D}
+	 */
+	public OD get(int O, int D) {
+		int i = indexOf(O, D);
+		return i < 0 ? null : ods[i];
+	}
+
+	/**
+	 * Finds the position of an OD-relation by the IDs of its end nodes.
+	 *
+	 * @param O the ID of the origin node
+	 * @param D the ID of the destination node
+	 * @return the position of the OD in the table, or -1 if there is no
+	 * demand from {@code O} to {@code D}
+	 */
+	public int indexOf(int O, int D) {
+		int origin = originIndex.getIndex(O);
+		if (origin < 0) return -1;
+		int low = originOffsets[origin];
+		int high = originOffsets[origin + 1] - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midD = ods[mid].D;
+			if (midD < D) low = mid + 1;
+			else if (midD > D) high = mid - 1;
+			else return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of distinct origins
+	 */
+	public int getNumOrigins() {
+		return originOffsets.length - 1;
+	}
+
+	/**
+	 * @param O the ID of a node
+	 * @return the index of {@code O} among the origins, or -1 if there
+	 * is no demand from {@code O}
+	 */
+	public int getOriginIndex(int O) {
+		return originIndex.getIndex(O);
+	}
+
+	/**
+	 * @param origin the index of an origin, from 0 to
+	 * {@code getNumOrigins()-1} in increasing order of node ID
+	 * @return the position of the first OD of the origin
+	 */
+	public int getOriginStart(int origin) {
+		return originOffsets[origin];
+	}
+
+	/**
+	 * @param origin the index of an origin
+	 * @return the position after the last OD of the origin
+	 */
+	public int getOriginEnd(int origin) {
+		return originOffsets[origin + 1];
+	}
+
+	/**
+	 * Iterates over all OD-relations, grouped by origin.
+	 */
+	@Override
+	public Iterator<OD> iterator() {
+		return new Iterator<OD>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < ods.length;
+			}
+
+			@Override
+			public OD next() {
+				if (next >= ods.length) throw new NoSuchElementException();
+				return ods[next++];
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
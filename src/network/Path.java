@@ -1,6 +1,5 @@
 package network;
 
-import java.util.ArrayList;
 import java.util.Collections;
 
 import choiceModel.RSUET;
@@ -15,10 +14,43 @@ public class Path implements Comparable<Path>{
 	private boolean hasBeenUsed;
 	
 	/**
-	 * Path as an ordered set of edges, e.g. (1,5) (5,8) (8,1)
-	 * @see Edge
+	 * Path as an ordered set of edges, e.g. (1,5) (5,8) (8,1), given by
+	 * their dense indices in {@code store}. This costs 4 bytes per edge,
+	 * which matters when universal choice sets hold millions of paths.
+	 * Null if the path is kept in a {@linkplain PathTrie}; use 
+	 * {@link Path#getEdgeIndices()} or {@link Path#copyEdges(int[])} to
+	 * read the edges of any path.
+	 * @see Edge#getIndex()
 	 */
-	ArrayList<Edge> edges; 
+	private final int[] edges; 
+
+	/**
+	 * The trie holding the edges of this path, or null if they are
+	 * kept in {@code edges}.
+	 */
+	private final PathTrie trie;
+
+	/**
+	 * The node of {@code trie} that represents this path.
+	 */
+	private final int leaf;
+
+	/**
+	 * The edge store of the network that the edges of this path belong to.
+	 */
+	private final EdgeStore store;
+
+	/**
+	 * Multiplier of the rolling hash in {@link Path#fingerprint(int[], int)};
+	 * a large odd constant.
+	 */
+	private static final long FINGERPRINT_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * 64-bit fingerprint of {@code edges}.
+	 * @see Path#fingerprint(int[], int)
+	 */
+	private final long fingerprint;
 
 	/**
 	 * the flow on this path
@@ -86,28 +118,53 @@ public class Path implements Comparable<Path>{
 	public boolean markedForRemoval;
 
 	/**
-	 * Constructs a path from a set of edges, with
+	 * Constructs a path from a sequence of edges, with
 	 * an explicitly specified OD relation to facilitate
 	 * certain method calls.
 	 * 
-	 * @param edges a list of edges that make up the path
+	 * @param edges the dense indices of the edges that make up the path.
+	 * The array is not copied.
+	 * @param store the edge store of the network
 	 * @param od the OD relation that the path belongs to
 	 */
-	public Path(ArrayList<Edge> edges, OD od) {
-		this(edges,od,false);
+	Path(int[] edges, EdgeStore store, OD od) {
+		this(edges,store,od,false);
 	}
 	
-	public Path(ArrayList<Edge> edges, OD od, boolean hasBeenUsed) {
-		//		this.nodeSeq = nodeSeq;
+	Path(int[] edges, EdgeStore store, OD od, boolean hasBeenUsed) {
 		this.edges = edges;
+		this.trie = null;
+		this.leaf = -1;
+		this.store = store;
+		this.fingerprint = fingerprint(edges, edges.length);
 		length = 0;
-		for (int i = 0; i < edges.size(); i++) {
-			length += edges.get(i).getLength();
+		for (int e: edges) {
+			length += store.length[e];
 		}
 		this.od = od;
 		this.hasBeenUsed = hasBeenUsed;
 	}
 
+	/**
+	 * Constructs a path that is stored as a node of a 
+	 * {@linkplain PathTrie}, sharing its prefix with the other 
+	 * paths from the same origin.
+	 * 
+	 * @param trie the trie of the origin of {@code od}
+	 * @param leaf the node of {@code trie} that represents the path
+	 * @param fingerprint the fingerprint of the edges of the path
+	 * @param od the OD relation that the path belongs to
+	 */
+	Path(PathTrie trie, int leaf, long fingerprint, OD od) {
+		this.edges = null;
+		this.trie = trie;
+		this.leaf = leaf;
+		this.store = trie.getStore();
+		this.fingerprint = fingerprint;
+		this.length = trie.getLength(leaf);
+		this.od = od;
+	}
+
 	/**
 	 * The natural ordering of paths uses their
 	 * generalized cost. This make it possible to
@@ -157,13 +214,57 @@ public class Path implements Comparable<Path>{
 	 * sequence as {@code anotherPath}, false otherwise
 	 */
 	public boolean equals(Path anotherPath) {
-		int thisSize = this.edges.size();
-		if (thisSize != anotherPath.edges.size()) return false;
+		int thisSize = this.getNumEdges();
+		if (thisSize != anotherPath.getNumEdges()) return false;
 		else {
+			int[] thisEdges = this.getEdgeIndices();
+			int[] otherEdges = anotherPath.getEdgeIndices();
+			int[] tail = store.tail;
 			for (int i = 0; i < thisSize; i++) {
-				if (this.edges.get(i).getTail() != anotherPath.edges.get(i).getTail()) return false;
+				if (tail[thisEdges[i]] != tail[otherEdges[i]]) return false;
 			}
-			if (this.edges.get(thisSize-1).getHead() != anotherPath.edges.get(thisSize-1).getHead()) return false;
+			if (store.head[thisEdges[thisSize-1]] != store.head[otherEdges[thisSize-1]]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the 64-bit rolling hash 
+	 * {@code sum (e[i]+1) * M^(n-1-i)} of a sequence of edges, with the 
+	 * arithmetic modulo 2^64. Equal sequences have equal fingerprints, 
+	 * and different sequences almost never do.
+	 * 
+	 * @param edges dense edge indices of the route
+	 * @param numEdges the number of edges, from the start of {@code edges},
+	 * to include
+	 * @return the fingerprint
+	 * @see PathIndex
+	 */
+	static long fingerprint(int[] edges, int numEdges) {
+		long hash = 0;
+		for (int i = 0; i < numEdges; i++) {
+			hash = hash * FINGERPRINT_MULTIPLIER + edges[i] + 1;
+		}
+		return hash;
+	}
+
+	long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Tells whether this path consists of exactly the given edges.
+	 * 
+	 * @param edges dense edge indices of a route
+	 * @param numEdges the number of edges, from the start of {@code edges},
+	 * in the route
+	 * @return true if the edge sequences are identical
+	 */
+	boolean hasEdges(int[] edges, int numEdges) {
+		if (trie != null) return trie.hasEdges(leaf, edges, numEdges);
+		if (this.edges.length != numEdges) return false;
+		for (int i = 0; i < numEdges; i++) {
+			if (this.edges[i] != edges[i]) return false;
 		}
 		return true;
 	}
@@ -172,6 +273,37 @@ public class Path implements Comparable<Path>{
 		return auxFlow;
 	}
 
+	/**
+	 * @return the number of edges in the path
+	 */
+	public int getNumEdges() {
+		return edges != null ? edges.length : trie.getDepth(leaf);
+	}
+
+	/**
+	 * @return the dense indices of the edges of the path, from the 
+	 * origin outward. For a path kept in a trie, this is a new array.
+	 */
+	int[] getEdgeIndices() {
+		if (edges != null) return edges;
+		int[] edgeIndices = new int[trie.getDepth(leaf)];
+		trie.copyEdges(leaf, edgeIndices);
+		return edgeIndices;
+	}
+
+	/**
+	 * Writes the dense indices of the edges of the path, from the 
+	 * origin outward, to the start of {@code buffer}.
+	 * 
+	 * @param buffer array of length at least {@link Path#getNumEdges()}
+	 * @return the number of edges written
+	 */
+	int copyEdges(int[] buffer) {
+		if (trie != null) return trie.copyEdges(leaf, buffer);
+		System.arraycopy(edges, 0, buffer, 0, edges.length);
+		return edges.length;
+	}
+
 	public int getD(){
 		return this.od.D;
 	}
@@ -187,6 +319,13 @@ public class Path implements Comparable<Path>{
 		return hasBeenUsed;
 	}
 	
+	/**
+	 * @return the edge store that the edge indices of this path refer to
+	 */
+	EdgeStore getStore() {
+		return store;
+	}
+
 	public int getO(){
 		return this.od.O;
 	}
@@ -200,8 +339,13 @@ public class Path implements Comparable<Path>{
 	 * on top of what is already there. 
 	 */
 	public void load(){ 
-		for (Edge edge: edges) {
-			edge.addFlow(this.flow);
+		if (trie != null) {
+			trie.load(leaf, this.flow);
+			return;
+		}
+		double[] flow = store.flow;
+		for (int e: edges) {
+			flow[e] += this.flow;
 		}
 	}
 	
@@ -232,25 +376,33 @@ public class Path implements Comparable<Path>{
 	@Override
 	public String toString() {
 		String string = "";
-		int iterateTo = edges.size();
+		int[] edges = getEdgeIndices();
+		int iterateTo = edges.length;
 		for (int i = 0; i < iterateTo ; i++) {
-			string = string+edges.get(i).getTail() + "->";
+			string = string+store.tail[edges[i]] + "->";
 		}
-		string = string + edges.get(iterateTo-1).getHead();
+		string = string + store.head[edges[iterateTo-1]];
 
 		return "Path: "+string+". genCost: "+genCost + ". Flow: " +getFlow();
 	}
 
 	/**
 	 * Sets the cost of the path {@code genCost}
-	 * to the sum of costs of its edges.
+	 * to the sum of costs of its edges. For a path kept in a 
+	 * {@linkplain PathTrie}, the sum is read from the trie, which
+	 * adds up the costs of prefixes shared by several paths only once.
 	 * 
 	 * @return the cost which was set
 	 */
 	public double updateCost(){
+		if (trie != null) {
+			this.genCost = trie.getCost(leaf);
+			return this.genCost;
+		}
 		double genCost = 0;
-		for (Edge edge: edges) {
-			genCost += edge.getGenCost(); // when uselocalstorage, sometimes  edges have gencost = null
+		double[] edgeCosts = store.genCost;
+		for (int e: edges) {
+			genCost += edgeCosts[e];
 		}
 		this.genCost = genCost;
 		return genCost;
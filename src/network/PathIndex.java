@@ -0,0 +1,142 @@
+package network;
+
+import java.util.ArrayList;
+
+/**
+ * Hash index of the paths in a choice set, keyed by their 64-bit
+ * fingerprint (see {@link Path#fingerprint(int[], int)}). It answers
+ * whether a route is already in the choice set in expected constant time,
+ * and lets {@link Network#columnGeneration()} test a shortest path before
+ * a {@link Path} object is created for it.
+ * <p>
+ * Paths are kept in an open-addressing table with linear probing. Distinct
+ * routes sharing a fingerprint are all stored, and a lookup compares the
+ * edges of every path with a matching fingerprint, so a collision never
+ * causes a new route to be mistaken for a known one.
+ *
+ * @see OD#containsPath(int[], int, long)
+ */
+final class PathIndex {
+	private static final int MIN_CAPACITY = 8;
+
+	/**
+	 * Fingerprint of the path in each occupied slot.
+	 */
+	private long[] fingerprints;
+
+	/**
+	 * The path in each slot, or null if the slot is empty.
+	 */
+	private Path[] paths;
+
+	private int size = 0;
+
+	/**
+	 * Builds an index of the given paths.
+	 *
+	 * @param choiceSet the paths to index
+	 */
+	PathIndex(ArrayList<Path> choiceSet) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2 * choiceSet.size()) capacity <<= 1;
+		fingerprints = new long[capacity];
+		paths = new Path[capacity];
+		for (Path path: choiceSet) {
+			add(path);
+		}
+	}
+
+	/**
+	 * @return the number of paths in the index
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a path to the index.
+	 *
+	 * @param path the path to add
+	 */
+	void add(Path path) {
+		if (2 * (size + 1) > paths.length) {
+			rehash(2 * paths.length);
+		}
+		long fingerprint = path.getFingerprint();
+		int mask = paths.length - 1;
+		int slot = slot(fingerprint) & mask;
+		while (paths[slot] != null) {
+			slot = (slot + 1) & mask;
+		}
+		fingerprints[slot] = fingerprint;
+		paths[slot] = path;
+		size++;
+	}
+
+	/**
+	 * Removes a path from the index. Entries further along the probe
+	 * sequence are shifted back, so that no tombstones are left behind.
+	 *
+	 * @param path the path to remove
+	 * @return true if the path was in the index
+	 */
+	boolean remove(Path path) {
+		int mask = paths.length - 1;
+		int slot = slot(path.getFingerprint()) & mask;
+		while (paths[slot] != path) {
+			if (paths[slot] == null) return false;
+			slot = (slot + 1) & mask;
+		}
+		paths[slot] = null;
+		size--;
+		int hole = slot;
+		for (int i = (hole + 1) & mask; paths[i] != null; i = (i + 1) & mask) {
+			int home = slot(fingerprints[i]) & mask;
+			// move the entry into the hole unless its home slot lies cyclically in (hole, i]
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				paths[hole] = paths[i];
+				fingerprints[hole] = fingerprints[i];
+				paths[i] = null;
+				hole = i;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether the index holds a path with the given edges.
+	 *
+	 * @param edges dense edge indices of the route; only the first
+	 * {@code numEdges} entries are used
+	 * @param numEdges the number of edges in the route
+	 * @param fingerprint the fingerprint of the route
+	 * @return true if a path with exactly these edges is in the index
+	 */
+	boolean contains(int[] edges, int numEdges, long fingerprint) {
+		int mask = paths.length - 1;
+		for (int slot = slot(fingerprint) & mask; paths[slot] != null; slot = (slot + 1) & mask) {
+			if (fingerprints[slot] == fingerprint && paths[slot].hasEdges(edges, numEdges)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void rehash(int capacity) {
+		Path[] oldPaths = paths;
+		fingerprints = new long[capacity];
+		paths = new Path[capacity];
+		size = 0;
+		for (Path path: oldPaths) {
+			if (path != null) add(path);
+		}
+	}
+
+	/**
+	 * Spreads the fingerprint over the table (Fibonacci hashing); the low
+	 * bits of a polynomial hash alone are poorly mixed.
+	 */
+	private static int slot(long fingerprint) {
+		return (int) ((fingerprint * 0x9E3779B97F4A7C15L) >>> 32);
+	}
+}
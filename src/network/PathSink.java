@@ -0,0 +1,36 @@
+package network;
+
+import java.io.IOException;
+
+/**
+ * Receives the paths of a choice set one by one as a 
+ * {@link ChoiceSetGenerator} finds them, so that where the paths end up,
+ * and how many of them are held in memory at once, is decided by the sink
+ * rather than by the generator. A sink receives the paths of a single OD
+ * and is closed when the OD is done.
+ *
+ * @see MemoryPathSink
+ * @see StoragePathSink
+ * @see CostFilteredPathSink
+ * @see Network#generateChoiceSet(OD, double, PathSink)
+ */
+public interface PathSink {
+	/**
+	 * Receives a path. The edges are only valid during the call, as the
+	 * generator reuses the array for the next path.
+	 *
+	 * @param od the OD of the path
+	 * @param pathEdges the dense indices of the edges of the path
+	 * @param numEdges the number of edges of the path, the first
+	 * {@code numEdges} entries of {@code pathEdges}
+	 * @throws PathSinkException if the path cannot be written
+	 */
+	void add(OD od, int[] pathEdges, int numEdges);
+
+	/**
+	 * Flushes and releases whatever the sink holds on to.
+	 *
+	 * @throws IOException if the paths cannot be written
+	 */
+	void close() throws IOException;
+}
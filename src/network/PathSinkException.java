@@ -0,0 +1,27 @@
+package network;
+
+import java.io.IOException;
+
+/**
+ * An {@link IOException} of a {@link PathSink}, thrown unchecked so that
+ * it can pass through a {@link ChoiceSetGenerator}, whose methods do not
+ * throw checked exceptions. The network unwraps it and throws the
+ * {@code IOException} from the method that generated the paths.
+ *
+ * @see Network#generateChoiceSet(OD, double, PathSink)
+ */
+public class PathSinkException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * @param cause the exception of the sink
+	 */
+	public PathSinkException(IOException cause) {
+		super(cause);
+	}
+
+	@Override
+	public IOException getCause() {
+		return (IOException) super.getCause();
+	}
+}
@@ -0,0 +1,231 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * Prefix-sharing store of the paths leaving one origin. Each trie node
+ * stands for the path from the origin to it, and a path in the store is
+ * simply a pointer to its last node; common prefixes, which are long for
+ * the paths enumerated by {@link Network#generateUniversalChoiceSets()},
+ * are stored once. The nodes are kept in parallel primitive arrays, and
+ * the parent of a node always has a smaller index than the node itself.
+ * <p>
+ * The cost of every prefix is kept in {@code prefixCost} and summed from
+ * the origin outward, so that each shared prefix is added up only once
+ * and the result equals {@link Path#updateCost()} on an explicit edge
+ * array. The costs are refreshed on demand when the generalized costs
+ * in the {@link EdgeStore} have changed.
+ *
+ * @see Path#Path(PathTrie, int, long, OD)
+ */
+final class PathTrie {
+	private static final int ROOT = 0;
+	private static final int NONE = -1;
+	private static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+	private final EdgeStore store;
+
+	/**
+	 * Parent of each node; {@code NONE} for the root.
+	 */
+	private int[] parent;
+
+	/**
+	 * Dense index of the edge from the parent to each node.
+	 */
+	private int[] edge;
+
+	/**
+	 * Number of edges from the root to each node.
+	 */
+	private int[] depth;
+
+	private int[] firstChild;
+	private int[] nextSibling;
+
+	/**
+	 * Generalized cost of the path from the root to each node.
+	 */
+	private double[] prefixCost;
+
+	/**
+	 * Length of the path from the root to each node; lengths do not
+	 * change, so these are set when nodes are created.
+	 */
+	private double[] prefixLength;
+
+	private int size = 1;
+
+	/**
+	 * The {@link EdgeStore#getCostVersion()} that {@code prefixCost} was
+	 * computed for.
+	 */
+	private long costVersion = -1;
+
+	PathTrie(EdgeStore store) {
+		this.store = store;
+		int capacity = DEFAULT_INITIAL_CAPACITY;
+		parent = new int[capacity];
+		edge = new int[capacity];
+		depth = new int[capacity];
+		firstChild = new int[capacity];
+		nextSibling = new int[capacity];
+		prefixCost = new double[capacity];
+		prefixLength = new double[capacity];
+		parent[ROOT] = NONE;
+		edge[ROOT] = NONE;
+		firstChild[ROOT] = NONE;
+		nextSibling[ROOT] = NONE;
+	}
+
+	EdgeStore getStore() {
+		return store;
+	}
+
+	/**
+	 * @return the number of nodes in the trie, including the root
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Inserts a path, reusing the longest prefix of it that is already
+	 * in the trie.
+	 *
+	 * @param edges dense indices of the edges of the path, starting at the
+	 * origin; only the first {@code numEdges} entries are used
+	 * @param numEdges the number of edges in the path
+	 * @return the node that represents the path
+	 */
+	int insert(int[] edges, int numEdges) {
+		int node = ROOT;
+		for (int i = 0; i < numEdges; i++) {
+			int e = edges[i];
+			int child = firstChild[node];
+			while (child != NONE && edge[child] != e) {
+				child = nextSibling[child];
+			}
+			if (child == NONE) {
+				child = addChild(node, e);
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	private int addChild(int node, int e) {
+		if (size == parent.length) {
+			int capacity = 2 * size;
+			parent = Arrays.copyOf(parent, capacity);
+			edge = Arrays.copyOf(edge, capacity);
+			depth = Arrays.copyOf(depth, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			prefixCost = Arrays.copyOf(prefixCost, capacity);
+			prefixLength = Arrays.copyOf(prefixLength, capacity);
+		}
+		int child = size++;
+		parent[child] = node;
+		edge[child] = e;
+		depth[child] = depth[node] + 1;
+		firstChild[child] = NONE;
+		nextSibling[child] = firstChild[node];
+		firstChild[node] = child;
+		prefixLength[child] = prefixLength[node] + store.length[e];
+		// Costs of new nodes are computed by the next refresh
+		costVersion = -1;
+		return child;
+	}
+
+	/**
+	 * @param node a node of the trie
+	 * @return the number of edges on the path to {@code node}
+	 */
+	int getDepth(int node) {
+		return depth[node];
+	}
+
+	/**
+	 * @param node a node of the trie
+	 * @return the length of the path to {@code node}
+	 */
+	double getLength(int node) {
+		return prefixLength[node];
+	}
+
+	/**
+	 * Returns the generalized cost of the path to a node, first
+	 * recomputing the costs of all prefixes if the edge costs have
+	 * changed since they were last computed.
+	 *
+	 * @param node a node of the trie
+	 * @return the generalized cost of the path to {@code node}
+	 */
+	double getCost(int node) {
+		if (costVersion != store.getCostVersion()) {
+			updateCosts();
+		}
+		return prefixCost[node];
+	}
+
+	/**
+	 * Recomputes the generalized cost of all prefixes in a single pass
+	 * from the root outward.
+	 */
+	void updateCosts() {
+		long version = store.getCostVersion();
+		final double[] genCost = store.genCost;
+		for (int node = 1; node < size; node++) {
+			prefixCost[node] = prefixCost[parent[node]] + genCost[edge[node]];
+		}
+		costVersion = version;
+	}
+
+	/**
+	 * Adds flow to every edge on the path to a node.
+	 *
+	 * @param node a node of the trie
+	 * @param flow the flow to add
+	 */
+	void load(int node, double flow) {
+		final double[] edgeFlow = store.flow;
+		for (int n = node; n != ROOT; n = parent[n]) {
+			edgeFlow[edge[n]] += flow;
+		}
+	}
+
+	/**
+	 * Writes the edges on the path to a node, from the origin outward,
+	 * to the start of {@code buffer}.
+	 *
+	 * @param node a node of the trie
+	 * @param buffer array of length at least {@code getDepth(node)}
+	 * @return the number of edges written
+	 */
+	int copyEdges(int node, int[] buffer) {
+		int numEdges = depth[node];
+		int i = numEdges;
+		for (int n = node; n != ROOT; n = parent[n]) {
+			buffer[--i] = edge[n];
+		}
+		return numEdges;
+	}
+
+	/**
+	 * Tells whether the path to a node consists of exactly the given edges.
+	 *
+	 * @param node a node of the trie
+	 * @param edges dense edge indices of a route
+	 * @param numEdges the number of edges in the route
+	 * @return true if the edge sequences are identical
+	 */
+	boolean hasEdges(int node, int[] edges, int numEdges) {
+		if (depth[node] != numEdges) return false;
+		int i = numEdges;
+		for (int n = node; n != ROOT; n = parent[n]) {
+			if (edge[n] != edges[--i]) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,50 @@
+package network;
+
+/**
+ * The algorithms that the shortest path searches of a {@link Network} 
+ * can run on.
+ *
+ * @see Network#setShortestPathEngine(ShortestPathEngine)
+ */
+public enum ShortestPathEngine {
+	/**
+	 * Dijkstra's algorithm on an indexed 4-ary heap, see
+	 * {@link auxiliary.IndexedMinHeap}. Exact for any non-negative costs.
+	 */
+	HEAP,
+
+	/**
+	 * Dial's algorithm on a bucket queue of width
+	 * {@link Network#getDialResolution()}, see {@link auxiliary.BucketQueue}.
+	 * The nodes of a bucket are settled together once the bucket is empty,
+	 * and nodes improved within the current bucket are scanned again, so 
+	 * the distances are exact; only ties between equally short paths may
+	 * be broken differently than by {@code HEAP}. It is faster when the 
+	 * edge costs span few multiples of the resolution, as on networks with
+	 * free-flow times in a small range.
+	 */
+	DIAL,
+
+	/**
+	 * One-to-all searches (PHAST) in the customizable contraction
+	 * hierarchy of the network, see {@link ContractionHierarchy}. The
+	 * hierarchy is built once and customized whenever the edge costs have
+	 * changed, after which a search needs no priority queue. The distances
+	 * are exact, but are summed in a different order than by {@code HEAP},
+	 * so they may differ in the last bits, and ties between equally short
+	 * paths may be broken differently.
+	 */
+	CCH,
+
+	/**
+	 * Instead of one search per origin, one A* search per OD, guided by 
+	 * lower bounds from precomputed distances to and from a few landmarks
+	 * (ALT), see {@link Network#setNumLandmarks(int)}. Each search stops
+	 * when the destination is settled and mostly settles nodes towards it,
+	 * so it pays off where origins have few destinations each. The number
+	 * of nodes settled is counted, see {@link Network#getNumAStarQueries()}.
+	 * The distances are exact; ties may be broken differently than by
+	 * {@code HEAP}, which the one-to-all searches use with this engine.
+	 */
+	ALT
+}
@@ -0,0 +1,333 @@
+package network;
+
+import java.util.Arrays;
+
+import auxiliary.IndexedMinHeap;
+
+/**
+ * The shortest path trees of all origins with demand, kept from one
+ * column generation to the next and repaired instead of recomputed when
+ * the edge costs change (a dynamic single-source shortest path algorithm).
+ * Each tree is stored compactly as the distance and the dense index of
+ * the last edge of the shortest path to every node, see
+ * {@link ShortestPathTrees#getPredEdges(int)}.
+ * <p>
+ * All trees are shortest path trees for the same edge costs, the
+ * {@code treeCosts}. Before the trees are brought up to date,
+ * {@link ShortestPathTrees#prepare()} compares the current generalized
+ * costs with {@code treeCosts}; only the edges whose cost differs by more
+ * than the tolerance, relative to the cost in {@code treeCosts}, count as
+ * changed, and only their costs are copied. Changes within the tolerance
+ * therefore never add up beyond it. With a tolerance of 0, every change
+ * counts and the trees are exact.
+ * <p>
+ * {@link ShortestPathTrees#update(int, int, ShortestPathWorkspace)} then
+ * repairs the tree of one origin: the subtrees below tree edges that
+ * became more expensive lose their labels and are reattached from their
+ * unaffected in-neighbours, edges that became cheaper are relaxed, and
+ * Dijkstra's algorithm propagates the improvements from there. A tree
+ * that uses none of the more expensive edges and that none of the cheaper
+ * edges improves is left untouched, at a cost proportional to the number
+ * of changed edges, so late iterations of an equilibrium algorithm, where
+ * almost nothing changes, are close to free. Where equally short paths
+ * exist, the repaired tree may choose a different one than a search from
+ * scratch.
+ * <p>
+ * The trees of different origins can be updated concurrently from
+ * different workspaces, after {@code prepare} has returned.
+ *
+ * @see Network#setIncrementalShortestPaths(boolean)
+ */
+final class ShortestPathTrees {
+	private static final int NONE = -1;
+
+	/**
+	 * If more than this share of the edges changed, the trees are
+	 * recomputed from scratch, which is faster than repairing them.
+	 */
+	private static final double REBUILD_SHARE = 0.25;
+
+	private final Topology topology;
+	private final EdgeStore store;
+	private final double tolerance;
+
+	/**
+	 * Distance to every node and last edge of the shortest path to every
+	 * node, for each origin index of the {@link ODTable}; null until the
+	 * tree of the origin has been built.
+	 */
+	private final double[][] dist;
+	private final int[][] predEdges;
+
+	/**
+	 * The edge costs that all trees are shortest path trees for.
+	 */
+	private final double[] treeCosts;
+
+	/**
+	 * The edges that changed in the last {@code prepare}, and their costs
+	 * in {@code treeCosts} before that.
+	 */
+	private int[] changedEdges = new int[16];
+	private double[] previousCosts = new double[16];
+	private int numChangedEdges = 0;
+
+	/**
+	 * True if the trees must be built from scratch on their next update.
+	 */
+	private boolean rebuild = true;
+
+	private long costVersion = -1;
+
+	/**
+	 * @param topology the topology of the network
+	 * @param store the edges of the network
+	 * @param numOrigins the number of origins with demand
+	 * @param tolerance the relative change of the cost of an edge below
+	 * which the change is ignored
+	 */
+	ShortestPathTrees(Topology topology, EdgeStore store, int numOrigins, double tolerance) {
+		this.topology = topology;
+		this.store = store;
+		this.tolerance = tolerance;
+		dist = new double[numOrigins][];
+		predEdges = new int[numOrigins][];
+		treeCosts = new double[store.size()];
+	}
+
+	double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Finds the edges whose generalized cost changed beyond the tolerance
+	 * since the last call, and adopts their new costs. Must be called
+	 * before the trees are updated, and not concurrently with any update.
+	 */
+	void prepare() {
+		numChangedEdges = 0;
+		if (costVersion == store.getCostVersion()) {
+			return;
+		}
+		costVersion = store.getCostVersion();
+		final double[] genCost = store.genCost;
+		if (rebuild) {
+			System.arraycopy(genCost, 0, treeCosts, 0, treeCosts.length);
+			return;
+		}
+		for (int e = 0; e < treeCosts.length; e++) {
+			double previous = treeCosts[e];
+			if (Math.abs(genCost[e] - previous) > tolerance * Math.abs(previous)) {
+				if (numChangedEdges == changedEdges.length) {
+					changedEdges = Arrays.copyOf(changedEdges, 2 * numChangedEdges);
+					previousCosts = Arrays.copyOf(previousCosts, 2 * numChangedEdges);
+				}
+				changedEdges[numChangedEdges] = e;
+				previousCosts[numChangedEdges] = previous;
+				numChangedEdges++;
+				treeCosts[e] = genCost[e];
+			}
+		}
+		if (numChangedEdges > REBUILD_SHARE * treeCosts.length) {
+			rebuild = true;
+			numChangedEdges = 0;
+		}
+	}
+
+	/**
+	 * Marks all trees to be built from scratch on their next update.
+	 */
+	void invalidate() {
+		rebuild = true;
+		costVersion = -1;
+	}
+
+	/**
+	 * Must be called after all origins have been updated.
+	 */
+	void finish() {
+		rebuild = false;
+	}
+
+	/**
+	 * Brings the tree of an origin up to date with the costs adopted by
+	 * the last {@link ShortestPathTrees#prepare()}, building it if it
+	 * does not exist yet.
+	 *
+	 * @param origin the index of the origin in the {@link ODTable}
+	 * @param originNode the dense index of the origin node
+	 * @param workspace the scratch space of the calling thread
+	 */
+	void update(int origin, int originNode, ShortestPathWorkspace workspace) {
+		if (rebuild || dist[origin] == null) {
+			build(origin, originNode, workspace);
+			return;
+		}
+		if (numChangedEdges == 0) {
+			return;
+		}
+		final double[] d = dist[origin];
+		final int[] predEdge = predEdges[origin];
+		final int[] edgeTails = topology.edgeTails;
+		final int[] edgeHeads = topology.edgeHeads;
+		final IndexedMinHeap Q = workspace.heap;
+		Q.clear();
+
+		// Roots of the subtrees whose paths became more expensive
+		workspace.ensureRepairScratch();
+		final int[] marks = workspace.repairMarks;
+		workspace.repairMark += 2;
+		final int affected = workspace.repairMark + 1;
+		boolean hasAffected = false;
+		for (int i = 0; i < numChangedEdges; i++) {
+			int e = changedEdges[i];
+			if (treeCosts[e] > previousCosts[i] && edgeHeads[e] >= 0 && predEdge[edgeHeads[e]] == e) {
+				marks[edgeHeads[e]] = affected;
+				hasAffected = true;
+			}
+		}
+		if (hasAffected) {
+			detachAffectedSubtrees(originNode, d, predEdge, workspace);
+		}
+
+		// Edges that became cheaper may improve their heads
+		for (int i = 0; i < numChangedEdges; i++) {
+			int e = changedEdges[i];
+			if (treeCosts[e] < previousCosts[i] && edgeTails[e] >= 0) {
+				int v = edgeHeads[e];
+				double alt = d[edgeTails[e]] + treeCosts[e];
+				if (alt < d[v]) {
+					d[v] = alt;
+					predEdge[v] = e;
+					Q.insertOrDecreaseKey(v, alt);
+				}
+			}
+		}
+		propagate(d, predEdge, Q);
+	}
+
+	/**
+	 * Removes the labels of all nodes below the marked roots and reattaches
+	 * each such node to its best unaffected in-neighbour, queueing it.
+	 */
+	private void detachAffectedSubtrees(int originNode, double[] d, int[] predEdge, ShortestPathWorkspace workspace) {
+		final int[] marks = workspace.repairMarks;
+		final int[] stack = workspace.repairNodes;
+		final int clean = workspace.repairMark;
+		final int affected = clean + 1;
+		final int[] edgeTails = topology.edgeTails;
+		final int numNodes = topology.numNodes;
+
+		// A node is affected if the path to it passes a root; walk up the
+		// tree until a classified node is met, then classify the walk
+		marks[originNode] = clean;
+		for (int v = 0; v < numNodes; v++) {
+			int top = 0;
+			int u = v;
+			while (marks[u] != clean && marks[u] != affected) {
+				if (predEdge[u] == NONE) { // unreachable
+					marks[u] = clean;
+					break;
+				}
+				stack[top++] = u;
+				u = edgeTails[predEdge[u]];
+			}
+			int mark = marks[u];
+			while (top > 0) {
+				marks[stack[--top]] = mark;
+			}
+		}
+
+		// Collect the affected nodes and remove their labels
+		int numAffected = 0;
+		for (int v = 0; v < numNodes; v++) {
+			if (marks[v] == affected) {
+				stack[numAffected++] = v;
+				d[v] = Double.POSITIVE_INFINITY;
+				predEdge[v] = NONE;
+			}
+		}
+
+		// Reattach them to the unaffected part of the tree
+		final int[] inOffsets = topology.inOffsets;
+		final int[] inTails = topology.inTails;
+		final int[] inEdges = topology.inEdges;
+		final IndexedMinHeap Q = workspace.heap;
+		for (int i = 0; i < numAffected; i++) {
+			int v = stack[i];
+			for (int a = inOffsets[v]; a < inOffsets[v + 1]; a++) {
+				int u = inTails[a];
+				if (marks[u] == affected) {
+					continue;
+				}
+				double alt = d[u] + treeCosts[inEdges[a]];
+				if (alt < d[v]) {
+					d[v] = alt;
+					predEdge[v] = inEdges[a];
+				}
+			}
+			if (d[v] < Double.POSITIVE_INFINITY) {
+				Q.insert(v, d[v]);
+			}
+		}
+	}
+
+	private void build(int origin, int originNode, ShortestPathWorkspace workspace) {
+		int numNodes = topology.numNodes;
+		if (dist[origin] == null) {
+			dist[origin] = new double[numNodes];
+			predEdges[origin] = new int[numNodes];
+		}
+		final double[] d = dist[origin];
+		final int[] predEdge = predEdges[origin];
+		Arrays.fill(d, Double.POSITIVE_INFINITY);
+		Arrays.fill(predEdge, NONE);
+		d[originNode] = 0;
+		final IndexedMinHeap Q = workspace.heap;
+		Q.clear();
+		Q.insert(originNode, 0);
+		propagate(d, predEdge, Q);
+	}
+
+	/**
+	 * Dijkstra's algorithm from the nodes in the queue, whose labels and
+	 * those of all other nodes are upper bounds on the distances.
+	 */
+	private void propagate(double[] d, int[] predEdge, IndexedMinHeap Q) {
+		final int[] offsets = topology.offsets;
+		final int[] heads = topology.heads;
+		final int[] edges = topology.edges;
+		final double[] cost = treeCosts;
+		while (!Q.isEmpty()) {
+			int u = Q.poll();
+			double uDist = d[u];
+			for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+				int v = heads[a];
+				double alt = uDist + cost[edges[a]];
+				if (alt < d[v]) {
+					d[v] = alt;
+					predEdge[v] = edges[a];
+					Q.insertOrDecreaseKey(v, alt);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param origin the index of an origin in the {@link ODTable}
+	 * @return the dense index of the last edge of the shortest path from
+	 * the origin to each node, or -1 for the origin and unreachable nodes
+	 */
+	int[] getPredEdges(int origin) {
+		return predEdges[origin];
+	}
+
+	/**
+	 * @param origin the index of an origin in the {@link ODTable}
+	 * @return the distance from the origin to each node, for the costs of
+	 * the trees
+	 */
+	double[] getDist(int origin) {
+		return dist[origin];
+	}
+}
@@ -0,0 +1,251 @@
+package network;
+
+import java.util.Arrays;
+
+import auxiliary.BucketQueue;
+import auxiliary.IndexedMinHeap;
+
+/**
+ * The labels and priority queue of a shortest path search, indexed by
+ * dense node index. A workspace is owned by one thread at a time, and
+ * searches from different origins can run concurrently in different
+ * workspaces on the same {@link Network}, which itself is only read.
+ * <p>
+ * After {@link Network#dijkstraMinPriorityQueue(Node, ShortestPathWorkspace)}
+ * or {@link Network#dijkstraToDestinations(Node, ShortestPathWorkspace)},
+ * {@code dist[v]} is the shortest path distance from the origin to node
+ * {@code v} and {@code predEdge[v]} the dense index of the last edge on
+ * that path, or -1 for the origin and unreached nodes. All arrays are
+ * allocated once, so repeated searches do not allocate.
+ *
+ * @see Network#createShortestPathWorkspace()
+ */
+public final class ShortestPathWorkspace {
+	/**
+	 * Shortest path distance from the origin to each node.
+	 */
+	final double[] dist;
+
+	/**
+	 * Predecessor node of each node in the shortest path tree, or -1.
+	 */
+	final int[] pred;
+
+	/**
+	 * Dense index of the edge from {@code pred[v]} to {@code v}, or -1.
+	 */
+	final int[] predEdge;
+
+	/**
+	 * True once a node has been settled, that is, its label is final.
+	 */
+	final boolean[] visited;
+
+	final IndexedMinHeap heap;
+
+	/**
+	 * Bucket queue of {@link ShortestPathEngine#DIAL}, created on first use,
+	 * with the nodes taken out of its current bucket in {@code bucketNodes}
+	 * and marked by {@code bucketMarks[v] == bucketMark}.
+	 */
+	BucketQueue buckets;
+	int[] bucketNodes;
+	int[] bucketMarks;
+	int bucketMark = 0;
+
+	/**
+	 * The largest finite edge cost, as of {@link EdgeStore#getCostVersion()}
+	 * {@code maxEdgeCostVersion}.
+	 */
+	double maxEdgeCost;
+	long maxEdgeCostVersion = -1;
+
+	/**
+	 * {@code destinationMarks[v] == destinationMark} marks node {@code v}
+	 * as a destination of the current targeted search; incrementing
+	 * {@code destinationMark} clears all marks at once.
+	 */
+	final int[] destinationMarks;
+	int destinationMark = 0;
+
+	/**
+	 * The dense index of the origin of the last search, or -1.
+	 */
+	int origin = -1;
+
+	/**
+	 * Buffer for the edges of a shortest path while it is backtracked.
+	 */
+	int[] pathEdges = new int[16];
+
+	ShortestPathWorkspace(int numNodes) {
+		dist = new double[numNodes];
+		pred = new int[numNodes];
+		predEdge = new int[numNodes];
+		visited = new boolean[numNodes];
+		heap = new IndexedMinHeap(numNodes);
+		destinationMarks = new int[numNodes];
+	}
+
+	/**
+	 * Resets the labels of all nodes before a search from {@code origin}.
+	 *
+	 * @param origin the dense index of the origin node
+	 */
+	void reset(int origin) {
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(pred, -1);
+		Arrays.fill(predEdge, -1);
+		Arrays.fill(visited, false);
+		heap.clear();
+		this.origin = origin;
+		dist[origin] = 0;
+	}
+
+	/**
+	 * @return the dense index of the origin of the last search
+	 */
+	public int getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * @param v the dense index of a node
+	 * @return the shortest path distance from the origin of the last
+	 * search to {@code v}
+	 */
+	public double getDist(int v) {
+		return dist[v];
+	}
+
+	/**
+	 * @param v the dense index of a node
+	 * @return the dense index of the predecessor of {@code v} in the
+	 * shortest path tree, or -1
+	 */
+	public int getPred(int v) {
+		return pred[v];
+	}
+
+	/**
+	 * Creates the bucket queue of {@link ShortestPathEngine#DIAL} unless
+	 * it already exists.
+	 */
+	void ensureBuckets() {
+		if (buckets == null) {
+			buckets = new BucketQueue(dist.length);
+			bucketNodes = new int[dist.length];
+			bucketMarks = new int[dist.length];
+		}
+	}
+
+	/**
+	 * Scratch space of {@link ShortestPathTrees}, created on first use:
+	 * {@code repairMarks[v]} is {@code repairMark} for nodes whose tree
+	 * path is unaffected by the current repair and {@code repairMark+1}
+	 * for those that are affected.
+	 */
+	int[] repairMarks;
+	int repairMark = 0;
+	int[] repairNodes;
+
+	void ensureRepairScratch() {
+		if (repairMarks == null) {
+			repairMarks = new int[dist.length];
+			repairNodes = new int[dist.length];
+		}
+	}
+
+	/**
+	 * Scratch space of {@link ContractionHierarchy}, created on first use
+	 * and indexed by rank: the labels of the searches from the source and
+	 * towards the target, which are infinite between searches, and the arc
+	 * by which each label was set. {@code hierarchyArcs} holds the arcs of
+	 * a path before they are unpacked with {@code hierarchyStack}.
+	 */
+	double[] forwardDist;
+	int[] forwardArc;
+	double[] backwardDist;
+	int[] backwardArc;
+	int[] hierarchyArcs;
+	int[] hierarchyStack;
+
+	void ensureHierarchyScratch() {
+		if (forwardDist == null) {
+			forwardDist = new double[dist.length];
+			forwardArc = new int[dist.length];
+			backwardDist = new double[dist.length];
+			backwardArc = new int[dist.length];
+			Arrays.fill(forwardDist, Double.POSITIVE_INFINITY);
+			Arrays.fill(forwardArc, -1);
+			Arrays.fill(backwardDist, Double.POSITIVE_INFINITY);
+			Arrays.fill(backwardArc, -1);
+			hierarchyArcs = new int[16];
+			hierarchyStack = new int[16];
+		}
+	}
+
+	void pushHierarchyArc(int i, int arc) {
+		if (i == hierarchyArcs.length) {
+			hierarchyArcs = Arrays.copyOf(hierarchyArcs, 2 * i);
+		}
+		hierarchyArcs[i] = arc;
+	}
+
+	int[] growHierarchyStack() {
+		hierarchyStack = Arrays.copyOf(hierarchyStack, 2 * hierarchyStack.length);
+		return hierarchyStack;
+	}
+
+	/**
+	 * Labels of the point-to-point searches of {@link Landmarks}, created
+	 * on first use. The label of node {@code v} belongs to the current
+	 * search only if {@code queryMarks[v]} is {@code queryMark} (reached)
+	 * or {@code queryMark+1} (settled), so a search does not reset the
+	 * labels of the whole network. {@code settledNodes} is the number of
+	 * nodes settled by the last search.
+	 */
+	double[] queryDist;
+	int[] queryPredEdge;
+	int[] queryMarks;
+	int queryMark = 0;
+	int settledNodes = 0;
+
+	void ensureQueryScratch() {
+		if (queryMarks == null) {
+			queryDist = new double[dist.length];
+			queryPredEdge = new int[dist.length];
+			queryMarks = new int[dist.length];
+		}
+	}
+
+	/**
+	 * @return the mark of reached nodes in a new point-to-point search
+	 */
+	int nextQueryMark() {
+		if (queryMark > Integer.MAX_VALUE - 4) {
+			Arrays.fill(queryMarks, 0);
+			queryMark = 0;
+		}
+		queryMark += 2;
+		return queryMark;
+	}
+
+	/**
+	 * @return the number of nodes settled by the last point-to-point search
+	 * in this workspace
+	 */
+	public int getSettledNodes() {
+		return settledNodes;
+	}
+
+	/**
+	 * Ensures that {@code pathEdges} can hold a path of the given
+	 * number of edges, keeping the edges it already holds.
+	 */
+	void ensurePathCapacity(int numEdges) {
+		if (pathEdges.length < numEdges) {
+			pathEdges = Arrays.copyOf(pathEdges, Math.max(numEdges, 2 * pathEdges.length));
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes the paths of an OD to a {@link ChoiceSetStore}, from which 
+ * {@link Network#loadUniversalChoiceSetFromStorage(OD)} reads them. The 
+ * paths are encoded into a buffer as they arrive, and the buffer is 
+ * spilled to a temporary file whenever it is full, so nothing but the
+ * buffer is held in memory and an OD with more paths than fit on the heap
+ * can still be generated. On closing, the record is copied into the store
+ * as a whole, so that it is contiguous even when several sinks write at
+ * the same time.
+ */
+public class StoragePathSink implements PathSink {
+	private final ChoiceSetStore store;
+	private final OD od;
+	private final EdgeStore edgeStore;
+	private ByteBuffer buffer;
+	private FileChannel spill;
+	private long spilled = 0;
+	private int[] edges = new int[16];
+	private int numPaths = 0;
+
+	/**
+	 * @param store the store to write to
+	 * @param od the OD of the paths, whose choice set in the store is
+	 * replaced
+	 */
+	public StoragePathSink(ChoiceSetStore store, OD od) {
+		this.store = store;
+		this.od = od;
+		this.edgeStore = store.getNetwork().getEdgeStore();
+		this.buffer = store.acquireBuffer();
+	}
+
+	@Override
+	public void add(OD od, int[] pathEdges, int numEdges) {
+		try {
+			add(new Path(Arrays.copyOf(pathEdges, numEdges), edgeStore, od), true);
+		} catch (IOException e) {
+			throw new PathSinkException(e);
+		}
+	}
+
+	/**
+	 * Writes a path with its current costs.
+	 *
+	 * @param path the path
+	 * @param withFlows false to write flows of zero in place of those of
+	 * the path
+	 * @throws IOException if the path cannot be written
+	 */
+	public void add(Path path, boolean withFlows) throws IOException {
+		int numEdges = path.getNumEdges();
+		if (edges.length < numEdges) {
+			edges = new int[Math.max(numEdges, 2 * edges.length)];
+		}
+		path.copyEdges(edges);
+		int maxBytes = ChoiceSetEncoding.maxBytes(numEdges);
+		if (buffer.remaining() < maxBytes) {
+			spill();
+			if (buffer.capacity() < maxBytes) {
+				store.releaseBuffer(buffer);
+				buffer = ChoiceSetEncoding.allocate(maxBytes);
+			}
+		}
+		ChoiceSetEncoding.putPath(buffer, path, edges, numEdges, edgeStore, withFlows);
+		numPaths++;
+	}
+
+	/**
+	 * Moves the contents of the buffer to the temporary file.
+	 */
+	private void spill() throws IOException {
+		if (spill == null) {
+			File file = File.createTempFile("paths", ".tmp", store.getDirectory());
+			spill = FileChannel.open(file.toPath(), StandardOpenOption.READ, 
+					StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			spilled += spill.write(buffer, spilled);
+		}
+		buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			store.commit(od, numPaths, spill, spilled, buffer);
+		} finally {
+			store.releaseBuffer(buffer);
+			if (spill != null) {
+				spill.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed-sparse-row (CSR) representation of the outgoing
+ * adjacency of a {@link Network}. The outgoing arcs of the node with dense
+ * index {@code u} occupy the positions {@code offsets[u]} (inclusive) to
+ * {@code offsets[u+1]} (exclusive) of the parallel arrays {@code heads}
+ * and {@code edges}, which hold the dense index of the head node and of
+ * the edge, respectively. The incoming arcs are kept in the same way in
+ * {@code inOffsets}, {@code inTails} and {@code inEdges}.
+ * <p>
+ * The topology is built once when the network is read by
+ * {@link Network#Network(String, boolean, double)} and lets the hot loops
+ * (Dijkstra's algorithm, the choice set enumeration and the backtracking of
+ * shortest paths) traverse the network by dense index instead of looking up
+ * nodes and edges in hash maps.
+ *
+ * @see Node#getIndex()
+ * @see Edge#getIndex()
+ */
+public final class Topology {
+	/**
+	 * The number of nodes; the length of {@code offsets} is one larger.
+	 */
+	final int numNodes;
+
+	/**
+	 * Row pointers, so that the arcs out of node {@code u} are
+	 * {@code offsets[u], ..., offsets[u+1]-1}.
+	 */
+	final int[] offsets;
+
+	/**
+	 * Dense index of the head node of each arc.
+	 */
+	final int[] heads;
+
+	/**
+	 * Dense index of the edge represented by each arc.
+	 */
+	final int[] edges;
+
+	/**
+	 * Row pointers of the incoming arcs, so that the arcs into node
+	 * {@code v} are {@code inOffsets[v], ..., inOffsets[v+1]-1}.
+	 */
+	final int[] inOffsets;
+
+	/**
+	 * Dense index of the tail node of each incoming arc.
+	 */
+	final int[] inTails;
+
+	/**
+	 * Dense index of the edge represented by each incoming arc.
+	 */
+	final int[] inEdges;
+
+	/**
+	 * Dense index of the tail and head node of each edge, indexed by dense
+	 * edge index, or -1 for edges that no arc represents.
+	 */
+	final int[] edgeTails;
+	final int[] edgeHeads;
+
+	/**
+	 * Builds the topology from a list of arcs given as parallel arrays.
+	 * The relative order of arcs sharing a tail is preserved, so that
+	 * neighbours are visited in the order in which they were listed.
+	 *
+	 * @param numNodes the number of nodes in the network
+	 * @param numEdges the number of edges in the network, including those
+	 * that no arc represents
+	 * @param tails dense index of the tail node of each arc
+	 * @param heads dense index of the head node of each arc
+	 * @param edges dense index of the edge of each arc
+	 */
+	Topology(int numNodes, int numEdges, int[] tails, int[] heads, int[] edges) {
+		int numArcs = tails.length;
+		this.numNodes = numNodes;
+		this.offsets = new int[numNodes + 1];
+		this.heads = new int[numArcs];
+		this.edges = new int[numArcs];
+		for (int a = 0; a < numArcs; a++) {
+			offsets[tails[a] + 1]++;
+		}
+		for (int u = 0; u < numNodes; u++) {
+			offsets[u + 1] += offsets[u];
+		}
+		int[] next = new int[numNodes];
+		System.arraycopy(offsets, 0, next, 0, numNodes);
+		for (int a = 0; a < numArcs; a++) {
+			int position = next[tails[a]]++;
+			this.heads[position] = heads[a];
+			this.edges[position] = edges[a];
+		}
+
+		this.inOffsets = new int[numNodes + 1];
+		this.inTails = new int[numArcs];
+		this.inEdges = new int[numArcs];
+		for (int a = 0; a < numArcs; a++) {
+			inOffsets[heads[a] + 1]++;
+		}
+		for (int v = 0; v < numNodes; v++) {
+			inOffsets[v + 1] += inOffsets[v];
+		}
+		System.arraycopy(inOffsets, 0, next, 0, numNodes);
+		for (int a = 0; a < numArcs; a++) {
+			int position = next[heads[a]]++;
+			this.inTails[position] = tails[a];
+			this.inEdges[position] = edges[a];
+		}
+
+		this.edgeTails = new int[numEdges];
+		this.edgeHeads = new int[numEdges];
+		Arrays.fill(edgeTails, -1);
+		Arrays.fill(edgeHeads, -1);
+		for (int a = 0; a < numArcs; a++) {
+			edgeTails[edges[a]] = tails[a];
+			edgeHeads[edges[a]] = heads[a];
+		}
+	}
+
+	/**
+	 * @return the number of nodes in the topology
+	 */
+	public int getNumNodes() {
+		return numNodes;
+	}
+
+	/**
+	 * @return the number of arcs in the topology
+	 */
+	public int getNumArcs() {
+		return heads.length;
+	}
+
+	/**
+	 * @param u dense index of a node
+	 * @return the number of arcs leaving {@code u}
+	 */
+	public int getOutDegree(int u) {
+		return offsets[u + 1] - offsets[u];
+	}
+
+	/**
+	 * @param v dense index of a node
+	 * @return the number of arcs entering {@code v}
+	 */
+	public int getInDegree(int v) {
+		return inOffsets[v + 1] - inOffsets[v];
+	}
+
+	/**
+	 * @param u dense index of a node
+	 * @return the position of the first arc leaving {@code u}; the arcs
+	 * leaving {@code u} end at {@code getFirstOutArc(u+1)}
+	 */
+	public int getFirstOutArc(int u) {
+		return offsets[u];
+	}
+
+	/**
+	 * @param a the position of an arc
+	 * @return dense index of the head node of the arc
+	 */
+	public int getHead(int a) {
+		return heads[a];
+	}
+
+	/**
+	 * @param a the position of an arc
+	 * @return dense index of the edge that the arc represents
+	 */
+	public int getEdge(int a) {
+		return edges[a];
+	}
+
+	/**
+	 * @param e dense index of an edge
+	 * @return dense index of the tail node of the edge, or -1 if no arc
+	 * represents it
+	 */
+	public int getEdgeTail(int e) {
+		return edgeTails[e];
+	}
+
+	/**
+	 * Finds the first arc from {@code tail} to {@code head} by scanning the
+	 * outgoing arcs of {@code tail}; this is linear in the out-degree, which
+	 * is small in road networks.
+	 *
+	 * @param tail dense index of the tail node
+	 * @param head dense index of the head node
+	 * @return the position of the arc, or -1 if there is no such arc
+	 */
+	int findArc(int tail, int head) {
+		for (int a = offsets[tail]; a < offsets[tail + 1]; a++) {
+			if (heads[a] == head) return a;
+		}
+		return -1;
+	}
+}